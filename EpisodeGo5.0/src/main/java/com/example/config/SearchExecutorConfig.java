@@ -0,0 +1,70 @@
+package com.example.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 搜尋流程共用的執行緒池設定
+ */
+@Configuration
+public class SearchExecutorConfig {
+
+    /**
+     * 抓取網頁用的有界執行緒池 (所有查詢共用，避免每次查詢各自開執行緒)
+     */
+    @Bean(name = "fetchExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService fetchExecutor(@Value("${episodego.fetch.threads:32}") int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedDaemonThreads("page-fetch-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 執行整個搜尋流程 (Google 搜尋 + 計分) 的執行緒池，讓 Tomcat 的請求執行緒不必等待搜尋完成
+     */
+    @Bean(name = "searchExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService searchExecutor(@Value("${episodego.search.threads:16}") int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedDaemonThreads("search-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 送出串流搜尋事件 (SSE) 的執行緒池；慢的使用者只拖慢寫出，不拖慢計分
+     */
+    @Bean(name = "streamExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService streamExecutor(@Value("${episodego.search.stream-threads:4}") int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedDaemonThreads("search-stream-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    static ThreadFactory namedDaemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread t = new Thread(runnable, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -1,36 +1,93 @@
 package com.example.controller;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.example.model.SearchResult;
+import com.example.model.SelectionPolicy;
 import com.example.model.WebPage;
 import com.example.service.GoogleQueryService;
+import com.example.service.QueryNormalizer;
 import com.example.service.SearchEngine;
+import com.example.service.SingleFlight;
+import com.example.service.UrlCanonicalizer;
 
 @RestController
 @RequestMapping("/api")
-@CrossOrigin(origins = "*") // 允許任意前端網域
+@CrossOrigin(origins = "*", exposedHeaders = {
+        GoogleSearchController.PARTIAL_RESULTS_HEADER, GoogleSearchController.SEARCH_TIMEOUT_HEADER}) // 允許任意前端網域
 public class GoogleSearchController {
 
+    private static final Logger logger = LoggerFactory.getLogger(GoogleSearchController.class);
+
+    private static final int MAX_LIMIT = 50;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    /** 只用標題分數的結果 (時間預算用完時子網頁尚未算完) 的名次，以逗號分隔，從 1 開始 */
+    static final String PARTIAL_RESULTS_HEADER = "X-Partial-Results";
+
+    /** 等待搜尋超過 async-timeout 時的標頭 (狀態碼 504)，與「沒有相關結果」的空集合區分 */
+    static final String SEARCH_TIMEOUT_HEADER = "X-Search-Timeout";
+
+    private static final ResponseEntity<Map<String, String>> EMPTY_RESPONSE = ResponseEntity.ok(Collections.emptyMap());
+
+    private static final ResponseEntity<Map<String, String>> TIMEOUT_RESPONSE = ResponseEntity
+            .status(HttpStatus.GATEWAY_TIMEOUT)
+            .header(SEARCH_TIMEOUT_HEADER, "true")
+            .body(Collections.emptyMap());
+
     @Autowired
     private GoogleQueryService googleQueryService;
 
     @Autowired
     private SearchEngine searchEngine;
 
+    @Autowired
+    @Qualifier("searchExecutor")
+    private ExecutorService searchExecutor;
+
+    @Autowired
+    @Qualifier("streamExecutor")
+    private ExecutorService streamExecutor;
+
+    @Value("${episodego.search.async-timeout:30s}")
+    private Duration asyncTimeout;
+
+    // 同時進行的相同查詢 (正規化後的關鍵字 + 挑選條件) 只計算一次，其餘請求共用結果
+    private final SingleFlight<String, ResponseEntity<Map<String, String>>> inFlightSearches = new SingleFlight<>();
+
     /**
      * 搜尋 API，接收 GET 請求。
      * 
@@ -40,60 +97,333 @@ public class GoogleSearchController {
      * 3. 用 SearchEngine 進行加權排序 (若都無關 => 分數都<= 5)
      * 4. 若全部結果都 <= 5，回傳空 Map
      * 5. 否則正常回傳前 15 筆 (在 SearchEngine 中處理)
+     *
+     * 可選參數：limit 筆數上限 (預設 15)、maxWiki 維基百科上限 (預設 3)、maxPerDomain 每個網域上限 (預設 0 = 不限)、
+     * budgetMs 時間預算 (預設與上限為伺服器的查詢時限)。預算用完時尚未算完子網頁的結果只用標題分數排序，
+     * 其名次列在 X-Partial-Results 標頭。等待超過 async-timeout 時回傳 504 與 X-Search-Timeout 標頭。
+     *
+     * 多個使用者同時搜尋相同關鍵字時，只有第一個請求實際抓取與計分，其餘請求等待並取得相同的結果。
+     * 以非同步方式回應：等待搜尋時不佔用 Tomcat 的請求執行緒。
      */
     @GetMapping("/search")
-    public Map<String, String> search(@RequestParam("q") String query) {
-        try {
-            // 1. 先抓原始(標題, URL) 不論輸入關鍵字為何
-            Map<String, String> rawResults = googleQueryService.search(query);
+    public DeferredResult<ResponseEntity<Map<String, String>>> search(
+            @RequestParam("q") String query,
+            @RequestParam(value = "limit", defaultValue = "15") int limit,
+            @RequestParam(value = "maxWiki", defaultValue = "3") int maxWiki,
+            @RequestParam(value = "maxPerDomain", defaultValue = "0") int maxPerDomain,
+            @RequestParam(value = "budgetMs", required = false) Long budgetMs) {
+        SelectionPolicy policy = new SelectionPolicy(
+                Math.max(1, Math.min(limit, MAX_LIMIT)), Math.max(0, maxWiki), Math.max(0, maxPerDomain), true);
+        Duration budget = toBudget(budgetMs);
+        String key = QueryNormalizer.normalize(query) + "|" + policy.getLimit() + "|"
+                + policy.getMaxWikipedia() + "|" + policy.getMaxPerDomain() + "|" + budget.toMillis();
 
-            // 2. 建立 WebPage 清單時，檢查是否為合格連結
-            List<WebPage> pages = new ArrayList<>();
-            for (Map.Entry<String, String> entry : rawResults.entrySet()) {
-                String title = entry.getKey();
-                String url = entry.getValue();
-                
-                // 檢查或修正 url
-                String fixedUrl = fixDoubleEncoding(url);
-                if (!isValidUrl(fixedUrl)) {
-                    // 若解析失敗或仍有問題，跳過此條
-                    continue;
-                }
+        // 搜尋在 searchExecutor 上執行，請求執行緒立即歸還給 Tomcat；逾時回傳 504
+        DeferredResult<ResponseEntity<Map<String, String>>> deferred =
+                new DeferredResult<>(asyncTimeout.toMillis(), TIMEOUT_RESPONSE);
+        CompletableFuture<ResponseEntity<Map<String, String>>> result =
+                inFlightSearches.share(key, () -> submitSearch(query, policy, budget));
+        result.whenComplete((response, e) -> {
+            if (e == null) {
+                deferred.setResult(response);
+            } else if (!result.isCancelled()) {
+                deferred.setResult(EMPTY_RESPONSE);
+            }
+        });
+        // 逾時或使用者中斷連線 => 不再等待；沒有其他請求在等同一個查詢時，搜尋會被取消
+        deferred.onTimeout(() -> result.cancel(true));
+        deferred.onError(e -> result.cancel(true));
+        return deferred;
+    }
 
-                pages.add(new WebPage(fixedUrl, title));
+    /**
+     * 把搜尋交給 searchExecutor；取消回傳的 future 會中斷執行中的搜尋 (並取消其抓取)
+     */
+    private CompletableFuture<ResponseEntity<Map<String, String>>> submitSearch(String query, SelectionPolicy policy,
+                                                                                Duration budget) {
+        CompletableFuture<ResponseEntity<Map<String, String>>> result = new CompletableFuture<>();
+        Future<?> task = searchExecutor.submit(() -> {
+            try {
+                result.complete(runSearch(query, policy, budget));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
             }
+        });
+        return result;
+    }
 
-            // 3. 交給 SearchEngine 排序 + 挑前 15 + 維基百科最多 3
-            List<SearchResult> sortedList = searchEngine.searchAndSort(pages, query);
+    /**
+     * 串流搜尋 (Server-Sent Events)
+     *
+     * 事件依序為：
+     *  - provisional：取得 Google 結果後，只用標題分數排出的暫定名單
+     *  - update：子網頁分數陸續算完時更新的名單 (最多每 PROGRESS_INTERVAL_MS 一次)
+     *  - partial：(只在有部分結果時) 只用標題分數的結果名次，與 X-Partial-Results 標頭相同
+     *  - final：最終名單 (與 /api/search 的結果相同，全部不相關時為空)
+     * 除了 partial 以外，每個事件的資料都是 Map<標題, URL>。
+     */
+    @GetMapping(path = "/search/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam("q") String query,
+                             @RequestParam(value = "limit", defaultValue = "15") int limit,
+                             @RequestParam(value = "maxWiki", defaultValue = "3") int maxWiki,
+                             @RequestParam(value = "maxPerDomain", defaultValue = "0") int maxPerDomain,
+                             @RequestParam(value = "budgetMs", required = false) Long budgetMs) {
+        SelectionPolicy policy = new SelectionPolicy(
+                Math.max(1, Math.min(limit, MAX_LIMIT)), Math.max(0, maxWiki), Math.max(0, maxPerDomain), true);
+        Duration budget = toBudget(budgetMs);
+        SseEmitter emitter = new SseEmitter(asyncTimeout.toMillis());
+        AtomicReference<Future<?>> task = new AtomicReference<>();
+        Runnable abort = () -> {
+            Future<?> running = task.get();
+            if (running != null) {
+                running.cancel(true);
+            }
+        };
+        task.set(searchExecutor.submit(() -> streamSearch(query, policy, budget, emitter, abort)));
+        // 使用者離開或逾時 => 中斷搜尋 (並取消其抓取)
+        emitter.onTimeout(abort);
+        emitter.onError(e -> abort.run());
+        return emitter;
+    }
 
-            // 4. 檢查結果是否「全部分數都 <= 5 分」
-            boolean allBelowOrEq5 = true;
-            for (SearchResult sr : sortedList) {
-                if (sr.getScore() > 3) {
-                    allBelowOrEq5 = false;
-                    break;
+    private void streamSearch(String query, SelectionPolicy policy, Duration budget, SseEmitter emitter,
+                              Runnable abort) {
+        long start = System.nanoTime();
+        EventWriter writer = new EventWriter(emitter, abort);
+        try {
+            List<WebPage> pages = toWebPages(googleQueryService.search(query));
+            long[] lastSent = {0L};
+            boolean[] first = {true};
+            // 計分過程的回呼 (已由 SearchEngine 依序呼叫)；要送出時才挑選名單，
+            // 事件交給 streamExecutor 寫出，不在計分的執行緒上等待
+            Duration remaining = remaining(budget, start);
+            List<SearchResult> sortedList = searchEngine.searchAndSort(pages, query, policy, remaining, ranking -> {
+                long now = System.nanoTime();
+                if (!first[0] && now - lastSent[0] < TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MS)) {
+                    return;
                 }
+                Map<String, String> selected = toTitleUrlMap(ranking.get());
+                if (first[0]) {
+                    writer.enqueue(() -> writer.send("provisional", selected));
+                } else {
+                    writer.update(selected);
+                }
+                first[0] = false;
+                lastSent[0] = now;
+            });
+            if (!Thread.currentThread().isInterrupted()) {
+                Map<String, String> response = toResponse(sortedList);
+                String partial = partialRanks(sortedList);
+                writer.enqueue(() -> {
+                    if (!response.isEmpty() && !partial.isEmpty()) {
+                        sendPartial(emitter, partial);
+                    }
+                    writer.send("final", response);
+                });
             }
-            if (allBelowOrEq5) {
-                // 全部皆不相關 => 回傳空集合
-                return new LinkedHashMap<>();
+            writer.enqueue(emitter::complete);
+        } catch (InterruptedIOException e) {
+            // 搜尋已被取消
+            writer.enqueue(emitter::complete);
+        } catch (IOException e) {
+            logger.error("Streaming search failed for '{}'", query, e);
+            writer.enqueue(() -> {
+                writer.send("final", Collections.emptyMap());
+                emitter.complete();
+            });
+        } catch (RuntimeException e) {
+            // 其他錯誤也要結束串流，否則使用者要等到逾時
+            writer.enqueue(() -> emitter.completeWithError(e));
+        }
+    }
+
+    /**
+     * 依序寫出一個串流的事件 (在 streamExecutor 上)
+     *
+     * 尚未寫出的 update 只保留最新的一筆，使用者讀得慢時不會累積；送不出去代表使用者已離開，中斷搜尋。
+     */
+    private final class EventWriter {
+        private final SseEmitter emitter;
+        private final Runnable abort;
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private Map<String, String> pendingUpdate;
+
+        private EventWriter(SseEmitter emitter, Runnable abort) {
+            this.emitter = emitter;
+            this.abort = abort;
+        }
+
+        private synchronized void enqueue(Runnable write) {
+            tail = tail.exceptionally(e -> null).thenRunAsync(write, streamExecutor);
+        }
+
+        private synchronized void update(Map<String, String> ranking) {
+            boolean scheduled = pendingUpdate != null;
+            pendingUpdate = ranking;
+            if (!scheduled) {
+                enqueue(() -> {
+                    Map<String, String> latest;
+                    synchronized (this) {
+                        latest = pendingUpdate;
+                        pendingUpdate = null;
+                    }
+                    send("update", latest);
+                });
             }
+        }
 
-            // 5. 正常回傳 => Map<Title, URL>
-            Map<String, String> response = new LinkedHashMap<>();
-            for (SearchResult sr : sortedList) {
-                String t = sr.getWebPage().getTitle();
-                String u = sr.getWebPage().getUrl();
-                response.put(t, u);
+        private void send(String event, Map<String, String> data) {
+            if (!GoogleSearchController.this.send(emitter, event, data)) {
+                abort.run();
             }
+        }
+    }
+
+    /**
+     * 送出一個事件；使用者已離開則回傳 false
+     */
+    private boolean send(SseEmitter emitter, String event, Map<String, String> data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void sendPartial(SseEmitter emitter, String ranks) {
+        try {
+            emitter.send(SseEmitter.event().name("partial").data(ranks));
+        } catch (IOException | IllegalStateException e) {
+            // 使用者已離開，final 也送不出去
+        }
+    }
 
-            return response;
+    /**
+     * 實際執行一次搜尋 (抓取 Google 結果、計分、挑選)
+     */
+    private ResponseEntity<Map<String, String>> runSearch(String query, SelectionPolicy policy, Duration budget) {
+        long start = System.nanoTime();
+        try {
+            // 1. 先抓原始(標題, URL) 不論輸入關鍵字為何
+            Map<String, String> rawResults = googleQueryService.search(query);
+
+            // 2. 建立 WebPage 清單時，檢查是否為合格連結
+            List<WebPage> pages = toWebPages(rawResults);
+
+            // 3. 交給 SearchEngine 排序 + 挑前 15 + 維基百科最多 3 (Google 搜尋花掉的時間從預算中扣除)
+            List<SearchResult> sortedList = searchEngine.searchAndSort(
+                    pages, query, policy, remaining(budget, start), null);
+
+            // 4. 5. 全部不相關回傳空集合，否則回傳 Map<Title, URL>
+            Map<String, String> response = toResponse(sortedList);
+            String partial = partialRanks(sortedList);
+            if (response.isEmpty() || partial.isEmpty()) {
+                return ResponseEntity.ok(response);
+            }
+            return ResponseEntity.ok().header(PARTIAL_RESULTS_HEADER, partial).body(response);
 
+        } catch (InterruptedIOException e) {
+            // 搜尋已被取消，沒有人在等結果
+            return EMPTY_RESPONSE;
         } catch (IOException e) {
             e.printStackTrace();
             // 發生錯誤 => 回傳空
-            return new LinkedHashMap<>();
+            return EMPTY_RESPONSE;
+        }
+    }
+
+    /**
+     * 使用者指定的時間預算；未指定時用伺服器預設，且不超過伺服器的查詢時限
+     */
+    private Duration toBudget(Long budgetMs) {
+        Duration max = searchEngine.getDefaultBudget();
+        if (budgetMs == null) {
+            return max;
+        }
+        return Duration.ofMillis(Math.max(0, Math.min(budgetMs, max.toMillis())));
+    }
+
+    private Duration remaining(Duration budget, long startNanos) {
+        return budget.minusNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 只用標題分數的結果名次 (從 1 開始，以逗號分隔)
+     */
+    private String partialRanks(List<SearchResult> sortedList) {
+        StringJoiner ranks = new StringJoiner(",");
+        for (int i = 0; i < sortedList.size(); i++) {
+            if (sortedList.get(i).isPartial()) {
+                ranks.add(String.valueOf(i + 1));
+            }
         }
+        return ranks.toString();
+    }
+
+    /**
+     * 把 Google 結果轉成待計分的網頁，跳過無效的連結
+     * 指向同一份內容的網址 (http/https、行動版、追蹤參數等) 只保留排名最前面的一筆，不重複抓取與計分
+     */
+    private List<WebPage> toWebPages(Map<String, String> rawResults) {
+        List<WebPage> pages = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Map.Entry<String, String> entry : rawResults.entrySet()) {
+            String title = entry.getKey();
+            String url = entry.getValue();
+            
+            // 檢查或修正 url
+            String fixedUrl = UrlCanonicalizer.fixDoubleEncoding(url);
+            if (!isValidUrl(fixedUrl)) {
+                // 若解析失敗或仍有問題，跳過此條
+                continue;
+            }
+            String canonical = UrlCanonicalizer.canonicalize(fixedUrl);
+            if (!seen.add(canonical != null ? canonical : fixedUrl)) {
+                continue;
+            }
+
+            pages.add(new WebPage(fixedUrl, title));
+        }
+        return pages;
+    }
+
+    /**
+     * 最終回應：全部分數都 <= 3 視為不相關，回傳空集合
+     */
+    private Map<String, String> toResponse(List<SearchResult> sortedList) {
+        // 檢查結果是否「全部分數都 <= 5 分」
+        boolean allBelowOrEq5 = true;
+        for (SearchResult sr : sortedList) {
+            if (sr.getScore() > 3) {
+                allBelowOrEq5 = false;
+                break;
+            }
+        }
+        if (allBelowOrEq5) {
+            // 全部皆不相關 => 回傳空集合
+            return Collections.emptyMap();
+        }
+        // 同一份結果可能回給多個請求，不允許修改
+        return Collections.unmodifiableMap(toTitleUrlMap(sortedList));
+    }
+
+    /**
+     * 正常回傳 => Map<Title, URL>
+     */
+    private Map<String, String> toTitleUrlMap(List<SearchResult> sortedList) {
+        Map<String, String> response = new LinkedHashMap<>();
+        for (SearchResult sr : sortedList) {
+            String t = sr.getWebPage().getTitle();
+            String u = sr.getWebPage().getUrl();
+            response.put(t, u);
+        }
+        return response;
     }
 
     /**
@@ -108,19 +438,4 @@ public class GoogleSearchController {
             return false;
         }
     }
-
-    /**
-     * 若 URL 中含有 "%25" (可能是二次編碼的 '%'),
-     * 可以嘗試替換成 "%" 再做一次檢查。
-     * 
-     * 可再視情況多做 decode。
-     */
-    private String fixDoubleEncoding(String url) {
-        if (url.contains("%25")) {
-            // 簡單做一次替換，把 "%25" -> "%"
-            // 須注意有些情況會再次衍生新的問題
-            return url.replaceAll("%25", "%");
-        }
-        return url;
-    }
 }
@@ -0,0 +1,54 @@
+package com.example.fetch;
+
+import java.util.function.Consumer;
+
+import com.example.fetch.FetchResponse.Truncation;
+
+/**
+ * 一個回應最多讀取的內容量：每個網頁的上限，以及 (有 context 時) 查詢剩下的額度
+ */
+final class BodyLimit {
+
+    private final long maxPageBytes;
+    private final FetchContext context;
+    private final long maxQueryBytes;
+    private final Consumer<Truncation> onTruncated;
+    private long read;
+    private Truncation truncation = Truncation.NONE;
+
+    /**
+     * @param context 計算額度的查詢；null 表示只限制單頁
+     * @param onTruncated 第一次截斷時呼叫 (統計用)
+     */
+    BodyLimit(long maxPageBytes, FetchContext context, long maxQueryBytes, Consumer<Truncation> onTruncated) {
+        this.maxPageBytes = maxPageBytes;
+        this.context = context;
+        this.maxQueryBytes = maxQueryBytes;
+        this.onTruncated = onTruncated;
+    }
+
+    /**
+     * 要讀取 wanted 個位元組，回傳實際可讀取的數量；小於 wanted 表示已達上限，不再讀取
+     */
+    int allow(int wanted) {
+        long granted = Math.max(0, Math.min(wanted, maxPageBytes - read));
+        Truncation reason = granted < wanted ? Truncation.PAGE_LIMIT : Truncation.NONE;
+        if (context != null) {
+            long reserved = context.reserveBytes(granted, maxQueryBytes);
+            if (reserved < granted) {
+                granted = reserved;
+                reason = Truncation.QUERY_BUDGET;
+            }
+        }
+        read += granted;
+        if (reason != Truncation.NONE && truncation == Truncation.NONE) {
+            truncation = reason;
+            onTruncated.accept(reason);
+        }
+        return (int) granted;
+    }
+
+    Truncation getTruncation() {
+        return truncation;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.fetch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.fetch.FetchResponse.Truncation;
+
+/**
+ * 把回應內容讀進記憶體，最多讀到 BodyLimit 的上限 (超過的部分不讀取)
+ *
+ * 內容依收到的區塊保存 (已解壓縮)，不合併成一個大陣列；解析時直接以串流讀取各區塊。
+ */
+final class BytesSubscriber extends ChunkSubscriber<BytesSubscriber.Body> {
+
+    /** 讀到的內容區塊 (已解壓縮)、總大小、是否被截斷，與從連線收到的位元組數 */
+    record Body(List<byte[]> chunks, long size, Truncation truncation, long wireBytes) {
+
+        static final Body EMPTY = new Body(List.of(), 0, Truncation.NONE, 0);
+    }
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final BodyLimit limit;
+    private long size;
+
+    BytesSubscriber(BodyLimit limit) {
+        super(limit);
+        this.limit = limit;
+    }
+
+    @Override
+    protected boolean onChunk(ByteBuffer chunk) {
+        // 區塊的緩衝區可能被重複使用 (解壓縮時)，複製一份
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+        if (bytes.length > 0) {
+            chunks.add(bytes);
+            size += bytes.length;
+        }
+        return true;
+    }
+
+    @Override
+    protected Body finish() {
+        return new Body(List.copyOf(chunks), size, limit.getTruncation(), wireBytes());
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.fetch;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * 逐塊處理回應內容的 BodySubscriber
+ *
+ * 每收到一塊就交給 onChunk，不先把整個內容放進記憶體；onChunk 回傳 false 時取消訂閱
+ * (不再從連線讀取，HTTP/1.1 關閉連線、HTTP/2 重設串流)，並以目前的結果完成。
+ * 有 BodyLimit 時，讀到上限即交出剩下允許的部分並停止。
+ * 內容經過壓縮時 (decoding) 邊收邊解壓縮，onChunk 與上限看到的都是解壓縮後的內容。
+ */
+public abstract class ChunkSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    private final CompletableFuture<T> body = new CompletableFuture<>();
+    private final BodyLimit limit;
+    private ContentDecoder decoder;
+    private Flow.Subscription subscription;
+    private boolean done;
+    /** 從連線收到的位元組數 (壓縮時為壓縮後的大小) */
+    private long wireBytes;
+
+    protected ChunkSubscriber() {
+        this(null);
+    }
+
+    ChunkSubscriber(BodyLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * 依回應的 Content-Encoding 解壓縮內容 (必須在收到內容前設定)
+     */
+    ChunkSubscriber<T> decoding(ContentDecoder decoder) {
+        this.decoder = decoder;
+        return this;
+    }
+
+    /**
+     * 不讀取內容 (立即取消訂閱)，直接以 error 失敗
+     */
+    static <T> HttpResponse.BodySubscriber<T> failing(Throwable error) {
+        return new ChunkSubscriber<T>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+                onError(error);
+            }
+
+            @Override
+            protected boolean onChunk(ByteBuffer chunk) {
+                return false;
+            }
+
+            @Override
+            protected T finish() {
+                throw new IllegalStateException();
+            }
+        };
+    }
+
+    /**
+     * 不讀取內容 (立即取消訂閱)，直接以 value 完成
+     */
+    static <T> HttpResponse.BodySubscriber<T> skipping(T value) {
+        return new ChunkSubscriber<T>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+                onComplete();
+            }
+
+            @Override
+            protected boolean onChunk(ByteBuffer chunk) {
+                return false;
+            }
+
+            @Override
+            protected T finish() {
+                return value;
+            }
+        };
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        if (done) {
+            return;
+        }
+        try {
+            for (ByteBuffer item : items) {
+                wireBytes += item.remaining();
+                boolean more = decoder != null ? decoder.decode(item, this::accept) : accept(item);
+                if (!more) {
+                    done = true;
+                    subscription.cancel();
+                    complete();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            done = true;
+            subscription.cancel();
+            release();
+            body.completeExceptionally(e);
+            return;
+        }
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        if (!done) {
+            done = true;
+            release();
+            body.completeExceptionally(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        if (!done) {
+            done = true;
+            complete();
+        }
+    }
+
+    /** 從連線收到的位元組數 (壓縮時為壓縮後的大小) */
+    protected long wireBytes() {
+        return wireBytes;
+    }
+
+    /**
+     * 套用上限後交給 onChunk
+     * @return false 表示不再讀取
+     */
+    private boolean accept(ByteBuffer chunk) {
+        if (limit != null) {
+            int allowed = limit.allow(chunk.remaining());
+            if (allowed < chunk.remaining()) {
+                onChunk(chunk.slice(chunk.position(), allowed));
+                return false;
+            }
+        }
+        return onChunk(chunk);
+    }
+
+    /**
+     * 處理一塊內容
+     * @return false 表示已經足夠，不再讀取
+     */
+    protected abstract boolean onChunk(ByteBuffer chunk);
+
+    /**
+     * 內容讀完 (或提早停止) 時的結果
+     */
+    protected abstract T finish();
+
+    private void release() {
+        if (decoder != null) {
+            decoder.end();
+        }
+    }
+
+    private void complete() {
+        release();
+        try {
+            body.complete(finish());
+        } catch (RuntimeException e) {
+            body.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.fetch;
+
+import java.io.IOException;
+
+/**
+ * 主機的斷路器為開啟狀態，請求未送出即失敗
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String host) {
+        super("Circuit open for host " + host);
+    }
+}
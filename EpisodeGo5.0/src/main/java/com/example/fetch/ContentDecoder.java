@@ -0,0 +1,170 @@
+package com.example.fetch;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 邊收邊解壓縮回應內容 (Content-Encoding: gzip / deflate)
+ *
+ * 不先收集整個壓縮內容；每收到一塊就解壓縮，解出的內容直接交給下游。
+ * gzip 的標頭自行解析 (可能被切在多塊中)，內容交給 nowrap 的 Inflater；結尾的 CRC 不檢查
+ * (提早停止讀取時本來就讀不到)。deflate 依 RFC 是 zlib 格式，但也有伺服器送出未包裝的 deflate，依第一個位元組判斷。
+ */
+final class ContentDecoder {
+
+    /** 每次解壓縮輸出的最大塊 */
+    private static final int CHUNK = 16 * 1024;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final boolean gzip;
+    private Inflater inflater;
+    /** 尚未解析完的 gzip 標頭 (或判斷 deflate 格式前的位元組) */
+    private ByteBuffer header = ByteBuffer.allocate(0);
+
+    private ContentDecoder(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * 依 Content-Encoding 建立解碼器；未壓縮 (identity) 時回傳 null
+     * @throws ZipException 不支援的編碼
+     */
+    static ContentDecoder forEncoding(String contentEncoding) throws ZipException {
+        if (contentEncoding == null) {
+            return null;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "", "identity":
+                return null;
+            case "gzip", "x-gzip":
+                return new ContentDecoder(true);
+            case "deflate":
+                return new ContentDecoder(false);
+            default:
+                throw new ZipException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+    }
+
+    /**
+     * 解壓縮一塊內容，解出的每一塊交給 sink
+     * @return sink 回傳 false (不再需要) 時回傳 false
+     */
+    boolean decode(ByteBuffer compressed, Predicate<ByteBuffer> sink) {
+        ByteBuffer in = compressed;
+        if (inflater == null) {
+            in = concat(header, compressed);
+            if (!readHeader(in)) {
+                // 收到的緩衝區之後會被重複使用，留下複本
+                header = ByteBuffer.allocate(in.remaining()).put(in).flip();
+                return true;
+            }
+            header = null;
+        }
+        if (inflater.finished()) {
+            // 之後的內容 (gzip 結尾、多個成員) 不處理
+            return true;
+        }
+        inflater.setInput(in);
+        try {
+            while (true) {
+                ByteBuffer out = ByteBuffer.allocate(CHUNK);
+                int n = inflater.inflate(out);
+                if (n > 0 && !sink.test(out.flip())) {
+                    return false;
+                }
+                if (inflater.finished()) {
+                    return true;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("preset dictionary is not supported");
+                }
+                if (n == 0 && inflater.needsInput()) {
+                    return true;
+                }
+            }
+        } catch (DataFormatException e) {
+            ZipException error = new ZipException("Invalid compressed body: " + e.getMessage());
+            error.initCause(e);
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    /**
+     * 釋放 Inflater 的原生記憶體
+     */
+    void end() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 解析標頭並建立 Inflater；in 的位置移到內容開頭。標頭還不完整時回傳 false (in 不變)
+     */
+    private boolean readHeader(ByteBuffer in) {
+        if (!gzip) {
+            if (in.remaining() < 2) {
+                return false;
+            }
+            // zlib 標頭：壓縮方法 8，且前兩個位元組是 31 的倍數
+            int cmf = in.get(in.position()) & 0xff;
+            int flg = in.get(in.position() + 1) & 0xff;
+            boolean zlib = (cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0;
+            inflater = new Inflater(!zlib);
+            return true;
+        }
+
+        int p = in.position();
+        if (in.limit() - p < 10) {
+            return false;
+        }
+        if ((in.get(p) & 0xff) != 0x1f || (in.get(p + 1) & 0xff) != 0x8b || in.get(p + 2) != 8) {
+            throw new UncheckedIOException(new ZipException("Not in gzip format"));
+        }
+        int flags = in.get(p + 3) & 0xff;
+        p += 10;
+        if ((flags & FEXTRA) != 0) {
+            if (in.limit() - p < 2) {
+                return false;
+            }
+            p += 2 + ((in.get(p) & 0xff) | (in.get(p + 1) & 0xff) << 8);
+        }
+        for (int flag : new int[] {FNAME, FCOMMENT}) {
+            if ((flags & flag) != 0) {
+                while (p < in.limit() && in.get(p) != 0) {
+                    p++;
+                }
+                if (p >= in.limit()) {
+                    return false;
+                }
+                p++;
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            p += 2;
+        }
+        if (p > in.limit()) {
+            return false;
+        }
+        in.position(p);
+        inflater = new Inflater(true);
+        return true;
+    }
+
+    private static ByteBuffer concat(ByteBuffer first, ByteBuffer second) {
+        if (!first.hasRemaining()) {
+            return second;
+        }
+        return ByteBuffer.allocate(first.remaining() + second.remaining()).put(first).put(second).flip();
+    }
+}
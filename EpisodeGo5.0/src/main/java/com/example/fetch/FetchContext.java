@@ -0,0 +1,99 @@
+package com.example.fetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 單次查詢的抓取範圍：記錄這次查詢發出的所有抓取，查詢結束或逾時時一併取消；
+ * 並限制這次查詢可以發出的對沖 (hedge) 請求數與讀取的內容總量
+ */
+public class FetchContext {
+
+    private final List<CompletableFuture<?>> inFlight = new ArrayList<>();
+    private boolean cancelled;
+    private int hedges;
+    private long bytesRead;
+
+    /**
+     * 排隊時代表此範圍的鍵 (FetchScheduler 輪流分配的單位)
+     */
+    public Object queueKey() {
+        return this;
+    }
+
+    /**
+     * 記錄一個進行中的抓取；若此範圍已取消則立即取消它
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> fetch) {
+        synchronized (this) {
+            if (!cancelled) {
+                inFlight.add(fetch);
+                return fetch;
+            }
+        }
+        // 取消會執行抓取的後續動作 (例如離開共用下載)，不可持有此鎖
+        fetch.cancel(true);
+        return fetch;
+    }
+
+    /**
+     * 取得一個對沖請求的名額；此範圍已取消或已用完 max 個名額時回傳 false
+     */
+    public synchronized boolean tryAcquireHedge(int max) {
+        if (cancelled || hedges >= max) {
+            return false;
+        }
+        hedges++;
+        return true;
+    }
+
+    /**
+     * 從這次查詢的內容額度中取用 wanted 個位元組 (合計不超過 budget)
+     * @return 實際可讀取的位元組數，額度不足時小於 wanted
+     */
+    public synchronized long reserveBytes(long wanted, long budget) {
+        long granted = Math.max(0, Math.min(wanted, budget - bytesRead));
+        bytesRead += granted;
+        return granted;
+    }
+
+    // 共用下載 (SharedFetchContext) 用：先看各等待者的剩餘名額，再把用掉的算在每一個等待者上
+
+    synchronized boolean hasHedgeLeft(int max) {
+        return !cancelled && hedges < max;
+    }
+
+    synchronized void chargeHedge() {
+        hedges++;
+    }
+
+    synchronized long bytesLeft(long budget) {
+        return cancelled ? 0 : Math.max(0, budget - bytesRead);
+    }
+
+    synchronized void chargeBytes(long bytes) {
+        bytesRead += bytes;
+    }
+
+    /**
+     * 取消所有仍在進行中的抓取，之後加入的抓取也會立即被取消
+     * @return 被取消的抓取數
+     */
+    public int cancelAll() {
+        List<CompletableFuture<?>> fetches;
+        synchronized (this) {
+            cancelled = true;
+            fetches = new ArrayList<>(inFlight);
+            inFlight.clear();
+        }
+        // 在鎖外取消，理由同 track
+        int count = 0;
+        for (CompletableFuture<?> f : fetches) {
+            if (f.cancel(true)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
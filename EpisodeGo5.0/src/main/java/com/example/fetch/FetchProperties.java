@@ -0,0 +1,253 @@
+package com.example.fetch;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 對外抓取網頁的設定 (application.properties 中的 episodego.fetch.*)
+ */
+@Component
+@ConfigurationProperties(prefix = "episodego.fetch")
+public class FetchProperties {
+
+    /** 建立連線的時限 */
+    private Duration connectTimeout = Duration.ofSeconds(3);
+
+    /** 等待回應的時限 (主機樣本不足、無法自動調整時使用) */
+    private Duration readTimeout = Duration.ofSeconds(5);
+
+    /** 收到標頭後讀取內容的時限 (read-timeout 只涵蓋等待標頭)；超過時中止連線並歸還排程名額 */
+    private Duration bodyTimeout = Duration.ofSeconds(5);
+
+    /** 每個呼叫者等待一個網頁 (含共用中的下載) 的時限 */
+    private Duration callerTimeout = Duration.ofSeconds(10);
+
+    /** 每個網頁最多讀取的內容大小，超過的部分截斷 */
+    private DataSize maxPageSize = DataSize.ofMegabytes(2);
+
+    /** 每次查詢 (同一個 FetchContext) 合計最多讀取的內容大小，用完後其餘網頁截斷 */
+    private DataSize maxQuerySize = DataSize.ofMegabytes(32);
+
+    /** 是否要求壓縮傳輸 (Accept-Encoding: gzip, deflate)，收到後邊讀邊解壓縮 */
+    private boolean compression = true;
+
+    /** 對沖請求 (hedged request) 設定 */
+    private final Hedge hedge = new Hedge();
+
+    /** 依主機回應時間自動調整的等待時限 */
+    private final AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+
+    /** 隨機挑選的 User-Agent */
+    private List<String> userAgents = new ArrayList<>(List.of(
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64)",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)",
+            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:36.0) Gecko/20100101 Firefox/36.0",
+            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:40.0) Gecko/20100101 Firefox/40.0"));
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Duration getBodyTimeout() {
+        return bodyTimeout;
+    }
+
+    public void setBodyTimeout(Duration bodyTimeout) {
+        this.bodyTimeout = bodyTimeout;
+    }
+
+    public Duration getCallerTimeout() {
+        return callerTimeout;
+    }
+
+    public void setCallerTimeout(Duration callerTimeout) {
+        this.callerTimeout = callerTimeout;
+    }
+
+    public DataSize getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(DataSize maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    public DataSize getMaxQuerySize() {
+        return maxQuerySize;
+    }
+
+    public void setMaxQuerySize(DataSize maxQuerySize) {
+        this.maxQuerySize = maxQuerySize;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public Hedge getHedge() {
+        return hedge;
+    }
+
+    public AdaptiveTimeout getAdaptiveTimeout() {
+        return adaptiveTimeout;
+    }
+
+    public List<String> getUserAgents() {
+        return userAgents;
+    }
+
+    public void setUserAgents(List<String> userAgents) {
+        this.userAgents = userAgents;
+    }
+
+    /**
+     * 抓取超過主機回應時間的百分位數 (預設 p95) 仍未完成時，再發出一個相同的請求，採用先完成者
+     */
+    public static class Hedge {
+
+        private boolean enabled = true;
+
+        /** 觸發對沖的百分位數 */
+        private double quantile = 0.95;
+
+        /** 估計百分位數至少需要的樣本數 */
+        private int minSamples = 8;
+
+        /** 對沖前至少等待的時間 */
+        private Duration minDelay = Duration.ofMillis(50);
+
+        /** 每次查詢最多發出的對沖請求數 */
+        private int maxPerQuery = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getQuantile() {
+            return quantile;
+        }
+
+        public void setQuantile(double quantile) {
+            this.quantile = quantile;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public int getMaxPerQuery() {
+            return maxPerQuery;
+        }
+
+        public void setMaxPerQuery(int maxPerQuery) {
+            this.maxPerQuery = maxPerQuery;
+        }
+    }
+
+    /**
+     * 等待回應的時限 = 主機回應時間的百分位數 (預設 p99) × factor，限制在 [min, max] 之間
+     * 快的主機不必等滿固定時限，慢但有用的主機也不會每次都逾時
+     */
+    public static class AdaptiveTimeout {
+
+        private boolean enabled = true;
+
+        /** 估計時限用的百分位數 */
+        private double quantile = 0.99;
+
+        /** 百分位數乘上的倍數 */
+        private double factor = 2.0;
+
+        /** 估計百分位數至少需要的樣本數 */
+        private int minSamples = 20;
+
+        /** 時限的下限與上限 */
+        private Duration min = Duration.ofSeconds(1);
+        private Duration max = Duration.ofSeconds(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getQuantile() {
+            return quantile;
+        }
+
+        public void setQuantile(double quantile) {
+            this.quantile = quantile;
+        }
+
+        public double getFactor() {
+            return factor;
+        }
+
+        public void setFactor(double factor) {
+            this.factor = factor;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public Duration getMin() {
+            return min;
+        }
+
+        public void setMin(Duration min) {
+            this.min = min;
+        }
+
+        public Duration getMax() {
+            return max;
+        }
+
+        public void setMax(Duration max) {
+            this.max = max;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.fetch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * 一次抓取的結果：最終網址 (跟隨轉址後)、狀態碼、Content-Type 與原始內容
+ *
+ * 伺服器錯誤 (5xx、429) 與非網頁內容不讀取內容 (body 為空)；超過大小上限的內容被截斷。
+ * 內容依收到的區塊保存，解析時以串流依序讀取，不合併成一個大陣列。
+ */
+public class FetchResponse {
+
+    /** 內容是否被截斷，以及截斷的原因 */
+    public enum Truncation {
+        NONE,
+        /** 超過每個網頁的上限 (max-page-size) */
+        PAGE_LIMIT,
+        /** 查詢的內容額度 (max-query-size) 已用完 */
+        QUERY_BUDGET
+    }
+
+    private final URI uri;
+    private final int statusCode;
+    private final String contentType;
+    private final List<byte[]> body;
+    private final Truncation truncation;
+
+    public FetchResponse(URI uri, int statusCode, String contentType, byte[] body) {
+        this(uri, statusCode, contentType, body, Truncation.NONE);
+    }
+
+    public FetchResponse(URI uri, int statusCode, String contentType, byte[] body, Truncation truncation) {
+        this(uri, statusCode, contentType, List.of(body), truncation);
+    }
+
+    FetchResponse(URI uri, int statusCode, String contentType, List<byte[]> body, Truncation truncation) {
+        this.uri = uri;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.body = body;
+        this.truncation = truncation;
+    }
+
+    // Getter 方法
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * 完整內容 (合併各區塊，會複製一份；解析請用 parse)
+     */
+    public byte[] getBody() {
+        if (body.size() == 1) {
+            return body.get(0);
+        }
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (byte[] chunk : body) {
+            joined.write(chunk, 0, chunk.length);
+        }
+        return joined.toByteArray();
+    }
+
+    public Truncation getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * 是否為可解析的網頁內容 (與 Jsoup 預設接受的類型相同：text/*、XML/XHTML；未標示類型時視為網頁)
+     */
+    public boolean isHtml() {
+        return isHtml(contentType);
+    }
+
+    static boolean isHtml(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.endsWith("/xml") || type.endsWith("+xml");
+    }
+
+    /**
+     * 以 Jsoup 解析內容；編碼取自 Content-Type，沒有則由 Jsoup 從 BOM / meta 判斷
+     * 相對連結以最終網址為基準 (abs:href)
+     */
+    public Document parse() throws IOException {
+        return Jsoup.parse(openBody(), charset(contentType), uri.toString());
+    }
+
+    /**
+     * 依序讀取各區塊的串流
+     */
+    private InputStream openBody() {
+        List<InputStream> streams = new ArrayList<>(body.size());
+        for (byte[] chunk : body) {
+            streams.add(new ByteArrayInputStream(chunk));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * Content-Type 中的 charset，沒有或不支援 (名稱不合法、JVM 沒有此編碼) 則回傳 null，改由 BOM / meta 判斷
+     */
+    static String charset(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        for (String part : contentType.split(";")) {
+            String p = part.trim();
+            if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+                String name = p.substring(8).replace("\"", "").trim();
+                return isSupported(name) ? name : null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSupported(String name) {
+        try {
+            return Charset.isSupported(name);
+        } catch (IllegalCharsetNameException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.fetch;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 所有對外請求共用的排程器
+ *
+ *  - 全域同時進行的請求數上限
+ *  - 每個主機同時進行的請求數上限，以及兩次請求開始之間的最小間隔 (避免被限流或封鎖)
+ *  - 多個查詢同時等待時輪流分配 (每個查詢一次一個)，一個大查詢不會佔滿所有連線
+ *  - 同一個查詢內，優先度 (候選網頁的標題分數) 高的請求先送出
+ *
+ * 請求在 acquire 取得名額後送出，完成 (或取消) 後必須呼叫 release。
+ */
+@Component
+public class FetchScheduler {
+
+    private static final int MAX_IDLE_HOSTS = 1024;
+
+    private final int maxInFlight;
+    private final int maxPerHost;
+    private final long hostIntervalNanos;
+
+    private final Object lock = new Object();
+    /** 依輪流順序排列的查詢 (每次分配後移到最後) */
+    private final LinkedHashMap<Object, TreeSet<Waiter>> queues = new LinkedHashMap<>();
+    private final Map<String, Host> hosts = new HashMap<>();
+    private int inFlight;
+    private int queued;
+    private long sequence;
+    private boolean wakeUpScheduled;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread t = new Thread(runnable, "fetch-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final Comparator<Waiter> HIGHER_PRIORITY_FIRST = (a, b) -> {
+        int byPriority = Double.compare(b.priority, a.priority);
+        return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+    };
+
+    public FetchScheduler(MeterRegistry meterRegistry,
+                          @Value("${episodego.fetch.scheduler.max-in-flight:64}") int maxInFlight,
+                          @Value("${episodego.fetch.scheduler.max-per-host:6}") int maxPerHost,
+                          @Value("${episodego.fetch.scheduler.per-host-rate:10}") double perHostRate) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxPerHost = Math.max(1, maxPerHost);
+        this.hostIntervalNanos = perHostRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perHostRate) : 0;
+        Gauge.builder("episodego.fetch.scheduler.in-flight", this, s -> s.snapshot()[0])
+                .description("Outbound requests currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("episodego.fetch.scheduler.queued", this, s -> s.snapshot()[1])
+                .description("Outbound requests waiting for a slot")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 排隊取得送出請求的名額
+     * @param query 發出請求的查詢 (公平分配的單位)，null 表示不屬於任何查詢
+     * @param priority 優先度，越大越先送出
+     * @return 取得名額時完成；取消它即放棄排隊
+     */
+    public CompletableFuture<Permit> acquire(URI uri, Object query, double priority) {
+        String host = HostLatencies.hostOf(uri);
+        Waiter waiter;
+        synchronized (lock) {
+            waiter = new Waiter(host != null ? host : "", query != null ? query : this, priority, sequence++);
+            queues.computeIfAbsent(waiter.query, q -> new TreeSet<>(HIGHER_PRIORITY_FIRST)).add(waiter);
+            queued++;
+        }
+        waiter.future.whenComplete((permit, e) -> {
+            if (waiter.future.isCancelled()) {
+                remove(waiter);
+            }
+        });
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * 請求完成，歸還名額
+     */
+    public void release(Permit permit) {
+        synchronized (lock) {
+            if (permit.released) {
+                return;
+            }
+            permit.released = true;
+            inFlight--;
+            Host host = hosts.get(permit.host);
+            if (host != null) {
+                host.inFlight--;
+            }
+            if (hosts.size() > MAX_IDLE_HOSTS) {
+                long now = System.nanoTime();
+                hosts.values().removeIf(h -> h.inFlight == 0 && h.nextStart <= now);
+            }
+        }
+        dispatch();
+    }
+
+    private void remove(Waiter waiter) {
+        synchronized (lock) {
+            TreeSet<Waiter> queue = queues.get(waiter.query);
+            if (queue != null && queue.remove(waiter)) {
+                queued--;
+                if (queue.isEmpty()) {
+                    queues.remove(waiter.query);
+                }
+            }
+        }
+    }
+
+    /**
+     * 依序分配名額，直到全域名額用完或沒有可以送出的請求
+     */
+    private void dispatch() {
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (lock) {
+            long now = System.nanoTime();
+            long earliestBlocked = Long.MAX_VALUE;
+            boolean progress = true;
+            while (inFlight < maxInFlight && progress) {
+                progress = false;
+                // 每一輪每個查詢最多分配一個，分配到的查詢移到最後
+                for (Object query : new ArrayList<>(queues.keySet())) {
+                    if (inFlight >= maxInFlight) {
+                        break;
+                    }
+                    TreeSet<Waiter> queue = queues.get(query);
+                    Waiter picked = null;
+                    for (Iterator<Waiter> it = queue.iterator(); it.hasNext(); ) {
+                        Waiter w = it.next();
+                        Host host = hosts.get(w.host);
+                        if (host == null || (host.inFlight < maxPerHost && host.nextStart <= now)) {
+                            picked = w;
+                            it.remove();
+                            break;
+                        }
+                        if (host.inFlight < maxPerHost) {
+                            earliestBlocked = Math.min(earliestBlocked, host.nextStart);
+                        }
+                    }
+                    if (picked == null) {
+                        continue;
+                    }
+                    queued--;
+                    queues.remove(query);
+                    if (!queue.isEmpty()) {
+                        queues.put(query, queue);
+                    }
+                    Host host = hosts.computeIfAbsent(picked.host, h -> new Host());
+                    host.inFlight++;
+                    host.nextStart = now + hostIntervalNanos;
+                    inFlight++;
+                    ready.add(picked);
+                    progress = true;
+                }
+            }
+            // 只因速率限制而等待的請求：到時間再分配一次
+            if (queued > 0 && inFlight < maxInFlight && earliestBlocked != Long.MAX_VALUE && !wakeUpScheduled) {
+                wakeUpScheduled = true;
+                timer.schedule(() -> {
+                    synchronized (lock) {
+                        wakeUpScheduled = false;
+                    }
+                    dispatch();
+                }, Math.max(0, earliestBlocked - now), TimeUnit.NANOSECONDS);
+            }
+        }
+        for (Waiter w : ready) {
+            Permit permit = new Permit(w.host);
+            if (!w.future.complete(permit)) {
+                // 排隊時已被取消
+                release(permit);
+            }
+        }
+    }
+
+    private long[] snapshot() {
+        synchronized (lock) {
+            return new long[] {inFlight, queued};
+        }
+    }
+
+    /**
+     * 已取得的名額
+     */
+    public static final class Permit {
+        private final String host;
+        private boolean released;
+
+        private Permit(String host) {
+            this.host = host;
+        }
+    }
+
+    private static final class Waiter {
+        private final String host;
+        private final Object query;
+        private final double priority;
+        private final long sequence;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        private Waiter(String host, Object query, double priority, long sequence) {
+            this.host = host;
+            this.query = query;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class Host {
+        private int inFlight;
+        private long nextStart;
+    }
+}
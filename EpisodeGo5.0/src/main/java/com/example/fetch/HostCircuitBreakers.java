@@ -0,0 +1,167 @@
+package com.example.fetch;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 各主機的斷路器 (closed / open / half-open)
+ *
+ *  - closed：正常送出請求；連續失敗 failureThreshold 次即開啟
+ *  - open：openDuration 內的請求直接失敗，不再等待逾時
+ *  - half-open：開啟時間過後只放行一個試探請求，成功則關閉，失敗則再次開啟
+ * 失敗指連線錯誤、逾時、HTTP 5xx 與 429；其他狀態碼代表主機仍正常回應。
+ */
+@Component
+public class HostCircuitBreakers {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostCircuitBreakers.class);
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final Counter rejected;
+
+    public HostCircuitBreakers(MeterRegistry meterRegistry,
+                               @Value("${episodego.fetch.breaker.failure-threshold:5}") int failureThreshold,
+                               @Value("${episodego.fetch.breaker.open-duration:30s}") Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+        this.rejected = Counter.builder("episodego.fetch.breaker.rejected")
+                .description("Requests failed fast because the host's circuit was open")
+                .register(meterRegistry);
+        Gauge.builder("episodego.fetch.breaker.open", breakers, b -> b.values().stream().filter(Breaker::isOpen).count())
+                .description("Hosts whose circuit is currently open")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 是否可以送出請求；half-open 時只有第一個呼叫者取得試探名額。
+     * 回傳 true 之後必須呼叫 onSuccess、onFailure 或 onIgnored 其中之一
+     */
+    public boolean tryAcquire(URI uri) {
+        Breaker breaker = breakerOf(uri);
+        if (breaker == null || breaker.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void onSuccess(URI uri) {
+        Breaker breaker = breakerOf(uri);
+        if (breaker != null) {
+            breaker.onSuccess();
+        }
+    }
+
+    public void onFailure(URI uri) {
+        Breaker breaker = breakerOf(uri);
+        if (breaker != null && breaker.onFailure()) {
+            logger.info("Circuit opened for host {}", breaker.host);
+        }
+    }
+
+    /**
+     * 請求被取消，結果不列入計算 (half-open 時釋放試探名額)
+     */
+    public void onIgnored(URI uri) {
+        Breaker breaker = breakerOf(uri);
+        if (breaker != null) {
+            breaker.onIgnored();
+        }
+    }
+
+    /**
+     * 此狀態碼是否代表主機有問題
+     */
+    public static boolean isFailureStatus(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    private Breaker breakerOf(URI uri) {
+        String host = HostLatencies.hostOf(uri);
+        return host != null ? breakers.computeIfAbsent(host, Breaker::new) : null;
+    }
+
+    private final class Breaker {
+        private final String host;
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean probing;
+
+        private Breaker(String host) {
+            this.host = host;
+        }
+
+        private synchronized boolean tryAcquire() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (System.nanoTime() - openedAt < openNanos) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probing = true;
+                    return true;
+                default:
+                    if (probing) {
+                        return false;
+                    }
+                    probing = true;
+                    return true;
+            }
+        }
+
+        private synchronized void onSuccess() {
+            state = State.CLOSED;
+            failures = 0;
+            probing = false;
+        }
+
+        /**
+         * @return 是否因此從關閉變為開啟
+         */
+        private synchronized boolean onFailure() {
+            if (state == State.HALF_OPEN) {
+                open();
+                return false;
+            }
+            if (state == State.CLOSED && ++failures >= failureThreshold) {
+                open();
+                return true;
+            }
+            return false;
+        }
+
+        private synchronized void onIgnored() {
+            if (state == State.HALF_OPEN) {
+                probing = false;
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+        }
+
+        private synchronized boolean isOpen() {
+            return state != State.CLOSED;
+        }
+    }
+}
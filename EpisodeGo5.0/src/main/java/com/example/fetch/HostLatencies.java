@@ -0,0 +1,171 @@
+package com.example.fetch;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 各主機的回應時間分布 (HdrHistogram)，用來估計百分位數
+ *
+ * 每個主機保留最近兩個時間區段的樣本 (區段長度 window)，舊的樣本會自然淘汰。
+ * 決定等待時限只看該主機自己的樣本，不足時回傳 -1 (呼叫者改用固定的時限)；
+ * 決定對沖時機則可以所有主機合併的分布估計 (percentileOrOverall)。
+ */
+@Component
+public class HostLatencies {
+
+    private static final String ALL_HOSTS = "*";
+    /** 可記錄的最大值 (毫秒)，超過的樣本以此值記錄 */
+    private static final long MAX_MILLIS = Duration.ofMinutes(2).toMillis();
+    /** 主機數上限，超過時清掉最久沒有樣本的主機 */
+    private static final int MAX_HOSTS = 4096;
+
+    private final Map<String, Sketch> sketches = new ConcurrentHashMap<>();
+    private final long windowNanos;
+
+    public HostLatencies(@Value("${episodego.fetch.latency-window:5m}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * 記錄一次抓取花費的時間 (逾時的請求以等待的時間記錄)
+     */
+    public void record(URI uri, long millis) {
+        String host = hostOf(uri);
+        if (host != null) {
+            if (sketches.size() >= MAX_HOSTS && !sketches.containsKey(host)) {
+                evictIdle();
+            }
+            sketches.computeIfAbsent(host, h -> new Sketch()).add(millis);
+        }
+        sketches.computeIfAbsent(ALL_HOSTS, h -> new Sketch()).add(millis);
+    }
+
+    /**
+     * 主機回應時間的百分位數 (毫秒)，例如 percentile(uri, 0.99, 20) 為 p99；該主機的樣本不足時回傳 -1
+     * @param minSamples 至少需要的樣本數
+     */
+    public long percentile(URI uri, double quantile, int minSamples) {
+        String host = hostOf(uri);
+        return percentileOf(host != null ? sketches.get(host) : null, quantile, minSamples);
+    }
+
+    /**
+     * 同上，但該主機的樣本不足時改用所有主機合併的分布；兩者都不足時回傳 -1
+     */
+    public long percentileOrOverall(URI uri, double quantile, int minSamples) {
+        long millis = percentile(uri, quantile, minSamples);
+        return millis >= 0 ? millis : percentileOf(sketches.get(ALL_HOSTS), quantile, minSamples);
+    }
+
+    private static long percentileOf(Sketch sketch, double quantile, int minSamples) {
+        if (sketch == null || sketch.size() < minSamples) {
+            return -1;
+        }
+        return sketch.percentile(quantile);
+    }
+
+    /**
+     * 所有主機分布的摘要 (樣本數、p50、p90、p99、最大值)，依主機名稱排序
+     */
+    public Map<String, Summary> summaries() {
+        Map<String, Summary> result = new TreeMap<>();
+        sketches.forEach((host, sketch) -> {
+            Summary summary = sketch.summary();
+            if (summary.count() > 0) {
+                result.put(host, summary);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 單一主機的摘要；沒有樣本時回傳 null
+     */
+    public Summary summary(String host) {
+        Sketch sketch = sketches.get(host.toLowerCase(Locale.ROOT));
+        if (sketch == null) {
+            return null;
+        }
+        Summary summary = sketch.summary();
+        return summary.count() > 0 ? summary : null;
+    }
+
+    static String hostOf(URI uri) {
+        String host = uri.getHost();
+        return host != null ? host.toLowerCase(Locale.ROOT) : null;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        sketches.entrySet().removeIf(e -> !e.getKey().equals(ALL_HOSTS) && e.getValue().idleSince(now) > 2 * windowNanos);
+    }
+
+    public record Summary(long count, long p50, long p90, long p99, long max) {
+    }
+
+    /**
+     * 兩個區段的分布：current 只含目前區段，merged 含上一個區段與目前區段
+     * 區段結束時 merged 換成 current 的複本，上一個區段的樣本即被淘汰
+     */
+    private final class Sketch {
+        private Histogram current = newHistogram();
+        private Histogram merged = newHistogram();
+        private long rotateAt = System.nanoTime() + windowNanos;
+        private long lastRecord = System.nanoTime();
+
+        private synchronized void add(long millis) {
+            rotateIfDue();
+            long value = Math.max(1, Math.min(millis, MAX_MILLIS));
+            current.recordValue(value);
+            merged.recordValue(value);
+            lastRecord = System.nanoTime();
+        }
+
+        private synchronized long size() {
+            rotateIfDue();
+            return merged.getTotalCount();
+        }
+
+        private synchronized long percentile(double quantile) {
+            rotateIfDue();
+            return merged.getValueAtPercentile(quantile * 100);
+        }
+
+        private synchronized Summary summary() {
+            rotateIfDue();
+            return new Summary(merged.getTotalCount(),
+                    merged.getValueAtPercentile(50),
+                    merged.getValueAtPercentile(90),
+                    merged.getValueAtPercentile(99),
+                    merged.getMaxValue());
+        }
+
+        private synchronized long idleSince(long now) {
+            return now - lastRecord;
+        }
+
+        private void rotateIfDue() {
+            long now = System.nanoTime();
+            if (now - rotateAt < 0) {
+                return;
+            }
+            // 超過兩個區段沒有樣本時，上一個區段也已過期
+            merged = now - rotateAt >= windowNanos ? newHistogram() : current.copy();
+            current = newHistogram();
+            rotateAt = now + windowNanos;
+        }
+
+        private Histogram newHistogram() {
+            // 兩位有效數字 (誤差 1% 以內)
+            return new Histogram(MAX_MILLIS, 2);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.fetch;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator 端點 /actuator/fetchlatency：各主機回應時間的分布與目前使用的等待時限
+ */
+@Component
+@Endpoint(id = "fetchlatency")
+public class HostLatencyEndpoint {
+
+    private final HostLatencies latencies;
+    private final PageFetcher pageFetcher;
+
+    public HostLatencyEndpoint(HostLatencies latencies, PageFetcher pageFetcher) {
+        this.latencies = latencies;
+        this.pageFetcher = pageFetcher;
+    }
+
+    @ReadOperation
+    public Map<String, HostLatency> hosts() {
+        Map<String, HostLatency> result = new LinkedHashMap<>();
+        latencies.summaries().forEach((host, summary) -> result.put(host, toHostLatency(host, summary)));
+        return result;
+    }
+
+    /**
+     * 單一主機；沒有樣本時回傳 404
+     */
+    @ReadOperation
+    public HostLatency host(@Selector String host) {
+        HostLatencies.Summary summary = latencies.summary(host);
+        return summary != null ? toHostLatency(host, summary) : null;
+    }
+
+    private HostLatency toHostLatency(String host, HostLatencies.Summary summary) {
+        // "*" 為所有主機合併的分布，沒有對應的時限
+        long timeoutMs = host.equals("*") ? -1 : pageFetcher.timeoutFor(URI.create("http://" + host + "/")).toMillis();
+        return new HostLatency(summary.count(), summary.p50(), summary.p90(), summary.p99(), summary.max(), timeoutMs);
+    }
+
+    public record HostLatency(long count, long p50Ms, long p90Ms, long p99Ms, long maxMs, long timeoutMs) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.fetch;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 邊收邊解碼、交給 HtmlScanner 掃描；掃描器取得足夠的連結與文字 (或達到內容上限) 後停止讀取
+ *
+ * Content-Type 沒有標示編碼時與 Jsoup 相同：先暫存開頭的 5KB，依 BOM 或 <meta charset> 決定編碼，都沒有則用 UTF-8。
+ */
+final class HtmlScanSubscriber extends ChunkSubscriber<HtmlScanner> {
+
+    /** 判斷編碼時看的開頭大小 (與 Jsoup 相同) */
+    private static final int SNIFF_BYTES = 5 * 1024;
+
+    /** <meta charset="..."> 與 <meta http-equiv="Content-Type" content="...; charset=..."> */
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "<meta\\b[^>]*?charset\\s*=\\s*[\"']?\\s*([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private final HtmlScanner scanner;
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    /** 編碼確定前為 null */
+    private CharsetDecoder decoder;
+    /** 編碼確定前暫存的開頭內容 */
+    private ByteBuffer head;
+    /** 上一塊結尾不完整的多位元組字元 */
+    private ByteBuffer leftover;
+
+    /**
+     * @param charset Content-Type 標示的編碼；null 表示由內容開頭判斷
+     */
+    HtmlScanSubscriber(HtmlScanner scanner, Charset charset, BodyLimit limit) {
+        super(limit);
+        this.scanner = scanner;
+        if (charset != null) {
+            this.decoder = newDecoder(charset);
+        } else {
+            this.head = ByteBuffer.allocate(SNIFF_BYTES);
+        }
+    }
+
+    /**
+     * Content-Type 的 charset；沒有或不支援時回傳 null (由內容判斷，與 Jsoup 相同)
+     */
+    static Charset charsetOf(String contentType) {
+        String name = FetchResponse.charset(contentType);
+        return name != null ? Charset.forName(name) : null;
+    }
+
+    /**
+     * 依內容開頭判斷編碼：BOM、<meta> 中的 charset，都沒有則用 UTF-8；BOM 會被略過
+     */
+    static Charset sniff(ByteBuffer head) {
+        if (startsWith(head, 0xEF, 0xBB, 0xBF)) {
+            head.position(head.position() + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (startsWith(head, 0xFE, 0xFF)) {
+            head.position(head.position() + 2);
+            return StandardCharsets.UTF_16BE;
+        }
+        if (startsWith(head, 0xFF, 0xFE)) {
+            head.position(head.position() + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+        ByteBuffer view = head.duplicate();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        Matcher m = META_CHARSET.matcher(new String(bytes, StandardCharsets.ISO_8859_1));
+        if (m.find()) {
+            try {
+                return Charset.forName(m.group(1));
+            } catch (IllegalArgumentException e) {
+                // 不支援的編碼
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int... prefix) {
+        if (buffer.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((buffer.get(buffer.position() + i) & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static CharsetDecoder newDecoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    protected boolean onChunk(ByteBuffer chunk) {
+        if (decoder == null) {
+            ByteBuffer part = chunk.duplicate();
+            part.limit(part.position() + Math.min(part.remaining(), head.remaining()));
+            head.put(part);
+            chunk.position(part.position());
+            if (head.hasRemaining()) {
+                return true;
+            }
+            startDecoding();
+        }
+        ByteBuffer in = chunk;
+        if (leftover != null) {
+            in = ByteBuffer.allocate(leftover.remaining() + chunk.remaining()).put(leftover).put(chunk).flip();
+            leftover = null;
+        }
+        decode(in, false);
+        if (in.hasRemaining()) {
+            leftover = ByteBuffer.allocate(in.remaining()).put(in).flip();
+        }
+        return !scanner.isSatisfied();
+    }
+
+    /**
+     * 以暫存的開頭判斷編碼，解碼並掃描暫存的內容
+     */
+    private void startDecoding() {
+        head.flip();
+        decoder = newDecoder(sniff(head));
+        ByteBuffer buffered = head;
+        head = null;
+        onChunk(buffered);
+    }
+
+    @Override
+    protected HtmlScanner finish() {
+        if (decoder == null) {
+            startDecoding();
+        }
+        if (!scanner.isSatisfied()) {
+            decode(leftover != null ? leftover : ByteBuffer.allocate(0), true);
+            decoder.flush(chars);
+            chars.flip();
+            scanner.feed(chars);
+        }
+        scanner.finish();
+        return scanner;
+    }
+
+    private void decode(ByteBuffer in, boolean endOfInput) {
+        while (true) {
+            boolean overflow = decoder.decode(in, chars, endOfInput).isOverflow();
+            chars.flip();
+            scanner.feed(chars);
+            chars.clear();
+            if (!overflow || scanner.isSatisfied()) {
+                return;
+            }
+        }
+    }
+}
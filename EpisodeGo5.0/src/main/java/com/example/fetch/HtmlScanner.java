@@ -0,0 +1,312 @@
+package com.example.fetch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.parser.Parser;
+
+/**
+ * 逐段讀入 HTML 的簡易掃描器：依文件順序取出 a[href] 連結與可見文字的開頭
+ *
+ * 不建立 DOM，跳過註解與 script/style 的內容，文字的空白合併方式與 Jsoup 的 text() 相近。
+ * 文字不含 nav/header/footer/aside 中的內容 (同一網站每一頁都相同的導覽與側欄)，只留頁面本身的內容。
+ * 連結只取其他網頁：讀到時先以請求的網址暫代轉換，略過 javascript:、mailto: 等非 http/https、頁內錨點與無法轉換的 href，
+ * 只有留下的連結計入 maxLinks。保留原始的 href (已解碼實體)；轉成絕對網址需要轉址後的最終網址，
+ * 讀完後由 resolveLinks 處理 (與 Jsoup 的 abs:href 相同，包含 <base href>)。
+ * 連結與文字都足夠時 isSatisfied() 為 true，呼叫者可以停止讀取。
+ */
+final class HtmlScanner {
+
+    private static final Pattern HREF = Pattern.compile(
+            "(?:^|[\\s\"'/])href\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))", Pattern.CASE_INSENSITIVE);
+
+    /** 未完成的標籤或註解最多暫存的字數，超過時丟棄 (不正常的內容) */
+    private static final int MAX_PENDING = 64 * 1024;
+
+    /** 開始標籤前視為空白的區塊元素 (與 Jsoup 相同；其餘元素與結束標籤不分隔文字) */
+    private static final Set<String> BLOCK = Set.of(
+            "html", "head", "body", "frameset", "script", "noscript", "style", "meta", "link", "title", "frame",
+            "noframes", "section", "nav", "aside", "hgroup", "header", "footer", "p", "h1", "h2", "h3", "h4", "h5",
+            "h6", "ul", "ol", "pre", "div", "blockquote", "hr", "address", "figure", "figcaption", "form",
+            "fieldset", "ins", "del", "dl", "dt", "dd", "li", "table", "caption", "thead", "tfoot", "tbody",
+            "colgroup", "col", "tr", "th", "td", "video", "audio", "canvas", "details", "menu", "plaintext",
+            "template", "article", "main", "svg", "math", "center", "dir", "applet", "marquee", "listing", "br");
+
+    /** 導覽、頁首頁尾與側欄：其中的文字不列入 (連結照常取出) */
+    private static final Set<String> CHROME = Set.of("nav", "header", "footer", "aside");
+
+    private final String requestUri;
+    private final int maxLinks;
+    private final int maxTextChars;
+    private final List<String> hrefs = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder pending = new StringBuilder();
+    private String baseHref;
+    /** 在 script/style 中時為結束標籤的開頭 (例如「</script」) */
+    private String rawTextEnd;
+    private boolean space;
+    /** 目前位於幾層 CHROME 元素之中 */
+    private int chromeDepth;
+
+    /**
+     * @param requestUri 請求的網址 (轉址前)，讀取時用來判斷連結能否轉成 http/https 網址
+     */
+    HtmlScanner(String requestUri, int maxLinks, int maxTextChars) {
+        this.requestUri = requestUri;
+        this.maxLinks = maxLinks;
+        this.maxTextChars = maxTextChars;
+    }
+
+    /**
+     * 連結與文字都已足夠 (文字只供指紋使用，上限應遠小於一般網頁，才能在取得連結後很快停止)
+     */
+    boolean isSatisfied() {
+        return hrefs.size() >= maxLinks && text.length() >= maxTextChars;
+    }
+
+    /**
+     * 讀入下一段內容
+     */
+    void feed(CharSequence chars) {
+        if (isSatisfied()) {
+            return;
+        }
+        pending.append(chars);
+        scan();
+    }
+
+    /**
+     * 內容結束 (或提早停止)：剩下的文字也算進去
+     */
+    void finish() {
+        if (rawTextEnd == null && pending.indexOf("<") < 0) {
+            appendText(0, pending.length());
+        }
+        pending.setLength(0);
+    }
+
+    String getText() {
+        return text.toString();
+    }
+
+    /**
+     * 以最終網址 (與 <base href>) 把連結轉成絕對網址，無法轉換的略過
+     */
+    List<String> resolveLinks(String baseUri) {
+        String base = withBaseHref(baseUri);
+        List<String> links = new ArrayList<>(hrefs.size());
+        for (String href : hrefs) {
+            String absolute = StringUtil.resolve(base, href);
+            if (!absolute.isEmpty()) {
+                links.add(absolute);
+            }
+        }
+        return links;
+    }
+
+    /**
+     * 文件的基準網址：有 <base href> 時以它為準
+     */
+    private String withBaseHref(String uri) {
+        if (baseHref != null) {
+            String resolved = StringUtil.resolve(uri, baseHref);
+            if (!resolved.isEmpty()) {
+                return resolved;
+            }
+        }
+        return uri;
+    }
+
+    /**
+     * 是否為可抓取的其他網頁 (規則見 PageLinks)
+     */
+    private boolean isPageLink(String href) {
+        return PageLinks.isPageLink(href, StringUtil.resolve(withBaseHref(requestUri), href));
+    }
+
+    private void scan() {
+        int pos = 0;
+        int len = pending.length();
+        while (pos < len && !isSatisfied()) {
+            if (rawTextEnd != null) {
+                int end = indexOfIgnoreCase(rawTextEnd, pos);
+                if (end < 0) {
+                    // 結束標籤可能被切開，保留最後幾個字
+                    pos = Math.max(pos, len - rawTextEnd.length());
+                    break;
+                }
+                int gt = pending.indexOf(">", end);
+                if (gt < 0) {
+                    pos = end;
+                    break;
+                }
+                rawTextEnd = null;
+                pos = gt + 1;
+                continue;
+            }
+
+            int lt = pending.indexOf("<", pos);
+            if (lt < 0) {
+                // 結尾可能是被切開的實體 (例如「&am」)，留到下一段
+                int amp = pending.lastIndexOf("&");
+                int cut = amp >= pos && len - amp < 32 && pending.indexOf(";", amp) < 0 ? amp : len;
+                appendText(pos, cut);
+                pos = cut;
+                break;
+            }
+            appendText(pos, lt);
+            pos = lt;
+            if (lt + 4 > len) {
+                break;
+            }
+            char next = pending.charAt(lt + 1);
+            if (next == '!' && pending.charAt(lt + 2) == '-' && pending.charAt(lt + 3) == '-') {
+                int end = pending.indexOf("-->", lt + 4);
+                if (end < 0) {
+                    break;
+                }
+                pos = end + 3;
+                continue;
+            }
+            if (next == '!' || next == '?') {
+                int gt = pending.indexOf(">", lt);
+                if (gt < 0) {
+                    break;
+                }
+                pos = gt + 1;
+                continue;
+            }
+            boolean closing = next == '/';
+            int nameStart = closing ? lt + 2 : lt + 1;
+            if (!isAsciiLetter(pending.charAt(nameStart))) {
+                // 不是標籤的「<」
+                appendText(lt, lt + 1);
+                pos = lt + 1;
+                continue;
+            }
+            int gt = tagEnd(nameStart);
+            if (gt < 0) {
+                break;
+            }
+            tag(closing, nameStart, gt);
+            pos = gt + 1;
+        }
+        pending.delete(0, pos);
+        if (pending.length() > MAX_PENDING) {
+            pending.setLength(0);
+        }
+    }
+
+    private void tag(boolean closing, int nameStart, int gt) {
+        int nameEnd = nameStart;
+        while (nameEnd < gt && !Character.isWhitespace(pending.charAt(nameEnd))
+                && pending.charAt(nameEnd) != '/') {
+            nameEnd++;
+        }
+        String name = pending.substring(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+        boolean selfClosing = pending.charAt(gt - 1) == '/';
+        if (CHROME.contains(name)) {
+            if (closing) {
+                chromeDepth = Math.max(0, chromeDepth - 1);
+            } else if (!selfClosing) {
+                chromeDepth++;
+            }
+        }
+        if (closing) {
+            return;
+        }
+        if (BLOCK.contains(name)) {
+            space = true;
+        }
+        if ((name.equals("script") || name.equals("style")) && !selfClosing) {
+            rawTextEnd = "</" + name;
+        } else if (name.equals("a") || name.equals("base")) {
+            Matcher m = HREF.matcher(pending.subSequence(nameEnd, gt));
+            if (!m.find()) {
+                return;
+            }
+            String value = m.group(1) != null ? m.group(1) : m.group(2) != null ? m.group(2) : m.group(3);
+            value = Parser.unescapeEntities(value, true).trim();
+            if (name.equals("base")) {
+                if (baseHref == null) {
+                    baseHref = value;
+                }
+            } else if (hrefs.size() < maxLinks && isPageLink(value)) {
+                hrefs.add(value);
+            }
+        }
+    }
+
+    /**
+     * 標籤結尾「>」的位置 (略過屬性值中的「>」)；尚未讀到時回傳 -1
+     */
+    private int tagEnd(int from) {
+        char quote = 0;
+        char previous = 0;
+        for (int i = from; i < pending.length(); i++) {
+            char c = pending.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if ((c == '"' || c == '\'') && previous == '=') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+            if (!Character.isWhitespace(c)) {
+                previous = c;
+            }
+        }
+        return -1;
+    }
+
+    private void appendText(int from, int to) {
+        if (from >= to || chromeDepth > 0 || text.length() >= maxTextChars) {
+            return;
+        }
+        String raw = pending.substring(from, to);
+        if (raw.indexOf('&') >= 0) {
+            raw = Parser.unescapeEntities(raw, false);
+        }
+        for (int i = 0; i < raw.length() && text.length() < maxTextChars; i++) {
+            char c = raw.charAt(i);
+            if (StringUtil.isActuallyWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && text.length() > 0) {
+                    text.append(' ');
+                }
+                space = false;
+                text.append(c);
+            }
+        }
+    }
+
+    private int indexOfIgnoreCase(String target, int from) {
+        for (int i = from; i + target.length() <= pending.length(); i++) {
+            if (regionMatchesIgnoreCase(i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatchesIgnoreCase(int offset, String target) {
+        for (int j = 0; j < target.length(); j++) {
+            if (Character.toLowerCase(pending.charAt(offset + j)) != target.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
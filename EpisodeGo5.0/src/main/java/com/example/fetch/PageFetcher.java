@@ -0,0 +1,458 @@
+package com.example.fetch;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.ZipException;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 所有對外抓取共用的 HTTP 元件
+ *
+ * 包裝單一個 HttpClient：支援 HTTP/2 與 keep-alive，連線依主機放在連線池中重複使用，
+ * 不必每次請求都重新做 TCP/TLS 交握。
+ *
+ * 對沖請求 (fetchHedged)：抓取超過該主機回應時間的 p95 仍未完成時，再發出一個相同的請求，
+ * 採用先完成者並取消另一個，避免少數慢主機拖長整次查詢。每次查詢的對沖數有上限。
+ *
+ * 每個請求都經過主機的斷路器：持續失敗的主機在一段時間內直接失敗 (CircuitOpenException)。
+ *
+ * 所有請求都經由 FetchScheduler 排隊取得名額後才送出 (全域與每個主機的上限、查詢間輪流分配)。
+ *
+ * 先看回應標頭：伺服器錯誤 (5xx、429) 與非網頁內容 (PDF、圖片、影片等) 不讀取內容；網頁內容最多讀到每頁上限
+ * 與查詢剩下的額度，超過的部分截斷 (episodego.fetch.body.* 指標)。
+ *
+ * 請求壓縮傳輸 (gzip / deflate)，內容邊收邊解壓縮後直接交給解析或掃描，上限以解壓縮後的大小計算。
+ */
+@Component
+public class PageFetcher {
+
+    /** Brotli 需要額外的解碼器，只要求 JDK 可以解壓縮的格式 */
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private final HttpClient client;
+    private final FetchProperties properties;
+    private final HostLatencies latencies;
+    private final HostCircuitBreakers breakers;
+    private final FetchScheduler scheduler;
+    private final ExecutorService fetchExecutor;
+    private final Counter hedgesFired;
+    private final Counter hedgesWon;
+    private final Counter skippedStatus;
+    private final Counter skippedContentType;
+    private final Counter truncatedPage;
+    private final Counter truncatedQuery;
+    private final DistributionSummary bodySize;
+    private final DistributionSummary wireSize;
+
+    public PageFetcher(FetchProperties properties, HostLatencies latencies, HostCircuitBreakers breakers,
+                       FetchScheduler scheduler, MeterRegistry meterRegistry,
+                       @Qualifier("fetchExecutor") ExecutorService fetchExecutor) {
+        this.properties = properties;
+        this.latencies = latencies;
+        this.breakers = breakers;
+        this.scheduler = scheduler;
+        this.fetchExecutor = fetchExecutor;
+        this.hedgesFired = Counter.builder("episodego.fetch.hedges")
+                .description("Hedged (duplicate) requests sent for slow fetches")
+                .tag("outcome", "fired")
+                .register(meterRegistry);
+        this.hedgesWon = Counter.builder("episodego.fetch.hedges")
+                .description("Hedged (duplicate) requests sent for slow fetches")
+                .tag("outcome", "won")
+                .register(meterRegistry);
+        this.skippedStatus = skippedCounter(meterRegistry, "status");
+        this.skippedContentType = skippedCounter(meterRegistry, "content-type");
+        this.truncatedPage = truncatedCounter(meterRegistry, "page");
+        this.truncatedQuery = truncatedCounter(meterRegistry, "query");
+        this.bodySize = DistributionSummary.builder("episodego.fetch.body.size")
+                .description("Response body bytes read per fetch")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.wireSize = DistributionSummary.builder("episodego.fetch.body.wire-size")
+                .description("Response body bytes received per fetch, before decompression")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("episodego.fetch.body.limit", properties, p -> p.getMaxPageSize().toBytes())
+                .description("Maximum response body bytes read")
+                .baseUnit("bytes")
+                .tag("scope", "page")
+                .register(meterRegistry);
+        Gauge.builder("episodego.fetch.body.limit", properties, p -> p.getMaxQuerySize().toBytes())
+                .description("Maximum response body bytes read")
+                .baseUnit("bytes")
+                .tag("scope", "query")
+                .register(meterRegistry);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(properties.getConnectTimeout())
+                .executor(fetchExecutor)
+                .build();
+    }
+
+    /**
+     * 非同步抓取網址；網址不合法時回傳失敗的 future (IOException)
+     */
+    public CompletableFuture<FetchResponse> fetchAsync(String url) {
+        return fetchAsync(url, Map.of());
+    }
+
+    /**
+     * 非同步抓取網址，並加上額外的 request header
+     */
+    public CompletableFuture<FetchResponse> fetchAsync(String url, Map<String, String> headers) {
+        return map(send(url, headers, null, 0, () -> { }, bodyHandler(null), true), this::toFetchResponse);
+    }
+
+    /**
+     * 經由排程器送出請求：取得名額後才真正連線，完成後歸還名額
+     * @param query 公平分配的單位 (通常是查詢的 FetchContext.queueKey())
+     * @param onStart 取得名額、即將送出時呼叫
+     * @param handler 處理回應內容的方式 (每個請求各自呼叫一次)
+     * @param recordLatency 是否記錄回應時間；提早停止讀取的請求 (只讀開頭) 不記錄，以免拉低主機的分布
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(String url, Map<String, String> headers, Object query,
+                                                        double priority, Runnable onStart,
+                                                        HttpResponse.BodyHandler<T> handler, boolean recordLatency) {
+        URI uri;
+        HttpRequest.Builder builder;
+        try {
+            uri = URI.create(url);
+            builder = HttpRequest.newBuilder(uri)
+                    .header("User-Agent", randomUserAgent())
+                    .GET();
+            if (properties.isCompression() && !headers.containsKey("Accept-Encoding")) {
+                builder.header("Accept-Encoding", ACCEPT_ENCODING);
+            }
+            headers.forEach(builder::header);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("Invalid URL: " + url, e));
+        }
+
+        if (!breakers.tryAcquire(uri)) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(HostLatencies.hostOf(uri)));
+        }
+
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        CompletableFuture<FetchScheduler.Permit> permit = scheduler.acquire(uri, query, priority);
+        permit.thenAccept(p -> {
+            if (result.isDone()) {
+                scheduler.release(p);
+                return;
+            }
+            onStart.run();
+            // 回應時間與時限從真正送出時開始算，不含排隊時間
+            long start = System.nanoTime();
+            // HttpRequest 的 timeout 只涵蓋等待標頭；收到標頭後另計讀取內容的時限，內容停滯時也會歸還名額
+            long bodyTimeout = properties.getBodyTimeout().toMillis();
+            CompletableFuture<Void> bodyDeadline = new CompletableFuture<>();
+            HttpResponse.BodyHandler<T> timed = info -> {
+                bodyDeadline.completeOnTimeout(null, bodyTimeout, TimeUnit.MILLISECONDS);
+                return handler.apply(info);
+            };
+            CompletableFuture<HttpResponse<T>> exchange;
+            try {
+                HttpRequest request = builder.timeout(timeoutFor(uri)).build();
+                exchange = client.sendAsync(request, timed);
+            } catch (RuntimeException e) {
+                scheduler.release(p);
+                result.completeExceptionally(e);
+                return;
+            }
+            AtomicBoolean bodyTimedOut = new AtomicBoolean();
+            bodyDeadline.thenRun(() -> {
+                if (!exchange.isDone()) {
+                    bodyTimedOut.set(true);
+                    exchange.cancel(true);
+                }
+            });
+            exchange.whenComplete((response, e) -> {
+                scheduler.release(p);
+                bodyDeadline.cancel(false);
+                if (e != null) {
+                    Throwable error = bodyTimedOut.get()
+                            ? new HttpTimeoutException("Body not received within " + bodyTimeout + " ms: " + uri)
+                            : e;
+                    // 逾時也記錄 (以等待的時間)，否則分布只看得到成功的請求，時限會越調越短
+                    if (unwrap(error) instanceof HttpTimeoutException) {
+                        latencies.record(uri, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    }
+                    result.completeExceptionally(error);
+                    return;
+                }
+                if (recordLatency) {
+                    latencies.record(uri, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                result.complete(response);
+            });
+            result.whenComplete((response, e) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        });
+        // 取消回傳的 future 時放棄排隊或中止連線；其餘結果回報給斷路器
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                permit.cancel(false);
+                breakers.onIgnored(uri);
+            } else if (e != null || HostCircuitBreakers.isFailureStatus(response.statusCode())) {
+                breakers.onFailure(uri);
+            } else {
+                breakers.onSuccess(uri);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 送往該主機的請求等待回應的時限：回應時間的百分位數 × factor (限制在上下限之間)，
+     * 樣本不足時使用固定的 read-timeout
+     */
+    public Duration timeoutFor(URI uri) {
+        FetchProperties.AdaptiveTimeout adaptive = properties.getAdaptiveTimeout();
+        if (!adaptive.isEnabled()) {
+            return properties.getReadTimeout();
+        }
+        long millis = latencies.percentile(uri, adaptive.getQuantile(), adaptive.getMinSamples());
+        if (millis < 0) {
+            return properties.getReadTimeout();
+        }
+        long timeout = (long) Math.ceil(millis * adaptive.getFactor());
+        return Duration.ofMillis(Math.max(adaptive.getMin().toMillis(), Math.min(timeout, adaptive.getMax().toMillis())));
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * 非同步抓取網址；超過主機回應時間的百分位數仍未完成時發出對沖請求 (受 context 的名額限制)
+     */
+    public CompletableFuture<FetchResponse> fetchHedged(String url, FetchContext context) {
+        return fetchHedged(url, Map.of(), context, 0);
+    }
+
+    public CompletableFuture<FetchResponse> fetchHedged(String url, FetchContext context, double priority) {
+        return fetchHedged(url, Map.of(), context, priority);
+    }
+
+    public CompletableFuture<FetchResponse> fetchHedged(String url, Map<String, String> headers, FetchContext context) {
+        return fetchHedged(url, headers, context, 0);
+    }
+
+    /**
+     * 同上；請求依 context 公平排隊，同一個查詢內 priority 高的先送出
+     */
+    public CompletableFuture<FetchResponse> fetchHedged(String url, Map<String, String> headers,
+                                                        FetchContext context, double priority) {
+        return map(hedged(url, headers, context, priority, bodyHandler(context), true), this::toFetchResponse);
+    }
+
+    /**
+     * 串流讀取網頁，只取前 maxLinks 個 (http/https、非頁內錨點的) 連結與可見文字的前 maxTextChars 個字，足夠後即停止讀取
+     * (大網頁不必下載、解析全部內容)；伺服器錯誤與非網頁內容不讀取內容。對沖與排隊方式與 fetchHedged 相同
+     */
+    public CompletableFuture<ScannedPage> scanHedged(String url, FetchContext context, double priority,
+                                                     int maxLinks, int maxTextChars) {
+        HttpResponse.BodyHandler<HtmlScanner> handler = info -> {
+            String contentType = info.headers().firstValue("Content-Type").orElse(null);
+            if (!wantsBody(info.statusCode(), contentType)) {
+                return ChunkSubscriber.skipping(new HtmlScanner(url, 0, 0));
+            }
+            return decoded(info, new HtmlScanSubscriber(new HtmlScanner(url, maxLinks, maxTextChars),
+                    HtmlScanSubscriber.charsetOf(contentType), limitFor(context)));
+        };
+        return map(hedged(url, Map.of(), context, priority, handler, false), response -> new ScannedPage(
+                response.uri(),
+                response.statusCode(),
+                contentTypeOf(response),
+                response.body().resolveLinks(response.uri().toString()),
+                response.body().getText()));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> hedged(String url, Map<String, String> headers,
+                                                          FetchContext context, double priority,
+                                                          HttpResponse.BodyHandler<T> handler,
+                                                          boolean recordLatency) {
+        FetchProperties.Hedge hedge = properties.getHedge();
+        long delay = -1;
+        if (hedge.isEnabled()) {
+            try {
+                delay = latencies.percentileOrOverall(URI.create(url), hedge.getQuantile(), hedge.getMinSamples());
+            } catch (IllegalArgumentException e) {
+                // 不合法的網址由 send 回報
+            }
+        }
+        if (delay < 0) {
+            return send(url, headers, context.queueKey(), priority, () -> { }, handler, recordLatency);
+        }
+        long hedgeDelay = Math.max(delay, hedge.getMinDelay().toMillis());
+
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        List<CompletableFuture<HttpResponse<T>>> attempts = new CopyOnWriteArrayList<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        List<CompletableFuture<Void>> timers = new CopyOnWriteArrayList<>();
+
+        // 計時從第一個請求真正送出時開始，排隊的時間不算
+        launch(url, headers, context.queueKey(), priority, handler, recordLatency, false, result, attempts, pending, () -> {
+            CompletableFuture<Void> timer = CompletableFuture.runAsync(() -> {
+                if (!result.isDone() && context.tryAcquireHedge(hedge.getMaxPerQuery())) {
+                    pending.incrementAndGet();
+                    hedgesFired.increment();
+                    launch(url, headers, context.queueKey(), priority, handler, recordLatency, true, result, attempts,
+                            pending, () -> { });
+                }
+            }, CompletableFuture.delayedExecutor(hedgeDelay, TimeUnit.MILLISECONDS, fetchExecutor));
+            timers.add(timer);
+            if (result.isDone()) {
+                timer.cancel(false);
+            }
+        });
+
+        // 結果確定 (或被取消) 後，取消計時器與其他仍在進行的請求
+        result.whenComplete((response, e) -> {
+            for (CompletableFuture<Void> timer : timers) {
+                timer.cancel(false);
+            }
+            for (CompletableFuture<HttpResponse<T>> attempt : attempts) {
+                attempt.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <T> void launch(String url, Map<String, String> headers, Object query, double priority,
+                            HttpResponse.BodyHandler<T> handler, boolean recordLatency, boolean isHedge,
+                            CompletableFuture<HttpResponse<T>> result, List<CompletableFuture<HttpResponse<T>>> attempts,
+                            AtomicInteger pending, Runnable onStart) {
+        CompletableFuture<HttpResponse<T>> attempt = send(url, headers, query, priority, onStart, handler, recordLatency);
+        attempts.add(attempt);
+        if (result.isDone()) {
+            attempt.cancel(true);
+            return;
+        }
+        attempt.whenComplete((response, e) -> {
+            if (e == null) {
+                if (result.complete(response) && isHedge) {
+                    hedgesWon.increment();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                // 所有請求都失敗才算失敗
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * 轉換結果；取消轉換後的 future 時一併取消原本的請求
+     */
+    private static <A, B> CompletableFuture<B> map(CompletableFuture<A> source, Function<A, B> mapper) {
+        CompletableFuture<B> mapped = source.thenApply(mapper);
+        mapped.whenComplete((value, e) -> {
+            if (mapped.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return mapped;
+    }
+
+    /**
+     * 先看標頭：伺服器錯誤 (5xx、429) 與非網頁內容不讀取內容，其餘讀到上限為止
+     * @param context 計算額度的查詢；null 表示只限制單頁
+     */
+    private HttpResponse.BodyHandler<BytesSubscriber.Body> bodyHandler(FetchContext context) {
+        return info -> {
+            String contentType = info.headers().firstValue("Content-Type").orElse(null);
+            if (!wantsBody(info.statusCode(), contentType)) {
+                return ChunkSubscriber.skipping(BytesSubscriber.Body.EMPTY);
+            }
+            return decoded(info, new BytesSubscriber(limitFor(context)));
+        };
+    }
+
+    /**
+     * 依 Content-Encoding 邊收邊解壓縮；不支援的編碼不讀取內容，直接失敗
+     */
+    private static <T> HttpResponse.BodySubscriber<T> decoded(HttpResponse.ResponseInfo info,
+                                                              ChunkSubscriber<T> subscriber) {
+        try {
+            return subscriber.decoding(
+                    ContentDecoder.forEncoding(info.headers().firstValue("Content-Encoding").orElse(null)));
+        } catch (ZipException e) {
+            return ChunkSubscriber.failing(e);
+        }
+    }
+
+    private boolean wantsBody(int statusCode, String contentType) {
+        if (HostCircuitBreakers.isFailureStatus(statusCode)) {
+            skippedStatus.increment();
+            return false;
+        }
+        if (!FetchResponse.isHtml(contentType)) {
+            skippedContentType.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private BodyLimit limitFor(FetchContext context) {
+        return new BodyLimit(properties.getMaxPageSize().toBytes(), context, properties.getMaxQuerySize().toBytes(),
+                reason -> (reason == FetchResponse.Truncation.QUERY_BUDGET ? truncatedQuery : truncatedPage)
+                        .increment());
+    }
+
+    private FetchResponse toFetchResponse(HttpResponse<BytesSubscriber.Body> response) {
+        BytesSubscriber.Body body = response.body();
+        bodySize.record(body.size());
+        wireSize.record(body.wireBytes());
+        return new FetchResponse(response.uri(), response.statusCode(), contentTypeOf(response), body.chunks(),
+                body.truncation());
+    }
+
+    private static Counter skippedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("episodego.fetch.body.skipped")
+                .description("Responses whose body was not read (5xx/429 status or non-HTML content type)")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static Counter truncatedCounter(MeterRegistry meterRegistry, String limit) {
+        return Counter.builder("episodego.fetch.body.truncated")
+                .description("Response bodies cut off at the per-page or per-query size limit")
+                .tag("limit", limit)
+                .register(meterRegistry);
+    }
+
+    private static String contentTypeOf(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Type").orElse(null);
+    }
+
+    private String randomUserAgent() {
+        List<String> userAgents = properties.getUserAgents();
+        return userAgents.get(ThreadLocalRandom.current().nextInt(userAgents.size()));
+    }
+}
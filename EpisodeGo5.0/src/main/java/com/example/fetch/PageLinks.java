@@ -0,0 +1,22 @@
+package com.example.fetch;
+
+/**
+ * 哪些連結算是可抓取的其他網頁 (串流掃描與完整解析共用，兩邊取出的前幾個連結才會相同)
+ */
+public final class PageLinks {
+
+    private PageLinks() {
+    }
+
+    /**
+     * @param href 原始的 href (已解碼實體、去掉前後空白)
+     * @param absolute 轉成的絕對網址；無法轉換時為空字串
+     * @return 不是空連結或頁內錨點，且為 http/https 網址
+     */
+    public static boolean isPageLink(String href, String absolute) {
+        if (href.isEmpty() || href.startsWith("#")) {
+            return false;
+        }
+        return absolute.startsWith("http://") || absolute.startsWith("https://");
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.fetch;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * 串流掃描一個網頁的結果：最終網址、狀態碼、Content-Type、前幾個連結 (絕對網址) 與可見文字的開頭
+ *
+ * 伺服器錯誤 (5xx、429) 與非網頁內容不讀取內容，連結與文字為空。
+ */
+public class ScannedPage {
+    private final URI uri;
+    private final int statusCode;
+    private final String contentType;
+    private final List<String> links;
+    private final String text;
+
+    public ScannedPage(URI uri, int statusCode, String contentType, List<String> links, String text) {
+        this.uri = uri;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.links = links;
+        this.text = text;
+    }
+
+    // Getter 方法
+    public URI getUri() {
+        return uri;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean isHtml() {
+        return FetchResponse.isHtml(contentType);
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.fetch;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 多個查詢共用的一次下載的抓取範圍
+ *
+ * 對沖名額與內容額度由目前仍在等待的查詢共同決定：任一等待者還有對沖名額即可對沖，
+ * 內容最多讀到等待者中剩餘額度最多的那一個；用掉的名額與讀取的內容算在每一個等待者上。
+ * 排隊時跟著發起下載的查詢輪流 (請求送出前只會在一個佇列中)。
+ * 向等待者計算用量時不持有此鎖：等待者取消抓取時會回頭呼叫 leave，兩邊的鎖不可交錯持有。
+ */
+public class SharedFetchContext extends FetchContext {
+
+    private final Set<FetchContext> waiters = new LinkedHashSet<>();
+    private Object queueKey;
+
+    /**
+     * 加入等待這次下載的查詢；第一個加入的查詢決定排隊的位置
+     */
+    public synchronized void join(FetchContext caller) {
+        if (queueKey == null) {
+            queueKey = caller.queueKey();
+        }
+        waiters.add(caller);
+    }
+
+    /**
+     * 查詢不再等待 (已取得結果、逾時或取消)，之後的用量不再算在它上面
+     */
+    public synchronized void leave(FetchContext caller) {
+        waiters.remove(caller);
+    }
+
+    @Override
+    public synchronized Object queueKey() {
+        return queueKey != null ? queueKey : this;
+    }
+
+    private synchronized List<FetchContext> waiters() {
+        return List.copyOf(waiters);
+    }
+
+    @Override
+    public boolean tryAcquireHedge(int max) {
+        List<FetchContext> waiters = waiters();
+        boolean allowed = false;
+        for (FetchContext waiter : waiters) {
+            allowed |= waiter.hasHedgeLeft(max);
+        }
+        if (!allowed) {
+            return false;
+        }
+        for (FetchContext waiter : waiters) {
+            waiter.chargeHedge();
+        }
+        return true;
+    }
+
+    @Override
+    public long reserveBytes(long wanted, long budget) {
+        List<FetchContext> waiters = waiters();
+        long granted = 0;
+        for (FetchContext waiter : waiters) {
+            granted = Math.max(granted, Math.min(wanted, waiter.bytesLeft(budget)));
+        }
+        for (FetchContext waiter : waiters) {
+            waiter.chargeBytes(granted);
+        }
+        return granted;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.model;
+
+import java.util.List;
+
+/**
+ * 主頁計分需要的部分：前幾個連結 (絕對網址，依文件順序) 與內容開頭的 SimHash 指紋
+ */
+public class PageHead {
+    private final String url;
+    private final List<String> links;
+    private final long fingerprint;
+
+    public PageHead(String url, List<String> links, long fingerprint) {
+        this.url = url;
+        this.links = links;
+        this.fingerprint = fingerprint;
+    }
+
+    // Getter 方法
+    public String getUrl() {
+        return url;
+    }
+
+    public List<String> getLinks() {
+        return links;
+    }
+
+    /** 頁面本身 (不含導覽與側欄) 可見文字開頭的 SimHash 指紋；文字太短或無法比對時為 0 */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.model;
+
+import java.util.List;
+
+/**
+ * 抓取並解析一次後的網頁：外連連結、可見文字與基本資訊
+ */
+public class ParsedPage {
+    private final String url;
+    private final int statusCode;
+    private final String contentType;
+    private final String title;
+    private final String description;
+    private final String text;
+    private final List<String> links;
+
+    public ParsedPage(String url, int statusCode, String contentType, String title,
+                      String description, String text, List<String> links) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.title = title;
+        this.description = description;
+        this.text = text;
+        this.links = links;
+    }
+
+    // Getter 方法
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /** 網頁可見文字 (與 Document.text() 相同) */
+    public String getText() {
+        return text;
+    }
+
+    /** 所有 a[href] 的絕對網址，依文件順序 */
+    public List<String> getLinks() {
+        return links;
+    }
+}
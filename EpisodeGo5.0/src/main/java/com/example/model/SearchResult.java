@@ -3,10 +3,17 @@ package com.example.model;
 public class SearchResult {
     private WebPage webPage;
     private double score;
+    // 時間預算用完時子網頁尚未算完，分數只含標題分數
+    private boolean partial;
 
     public SearchResult(WebPage webPage, double score) {
+        this(webPage, score, false);
+    }
+
+    public SearchResult(WebPage webPage, double score, boolean partial) {
         this.webPage = webPage;
         this.score = score;
+        this.partial = partial;
     }
 
     // Getter 方法
@@ -18,5 +25,9 @@ public class SearchResult {
         return score;
     }
 
+    public boolean isPartial() {
+        return partial;
+    }
+
     // 若需要 Setter，可以添加
 }
@@ -0,0 +1,42 @@
+package com.example.model;
+
+/**
+ * 最終名單的挑選條件：筆數上限、維基百科上限、每個網域上限
+ */
+public class SelectionPolicy {
+
+    /** 預設：前 15 筆，維基百科最多 3 筆且第一筆是維基百科，網域不限 */
+    public static final SelectionPolicy DEFAULT = new SelectionPolicy(15, 3, 0, true);
+
+    private final int limit;
+    private final int maxWikipedia;
+    private final int maxPerDomain;
+    private final boolean pinWikipedia;
+
+    /**
+     * @param maxPerDomain 每個網域最多幾筆，0 表示不限
+     */
+    public SelectionPolicy(int limit, int maxWikipedia, int maxPerDomain, boolean pinWikipedia) {
+        this.limit = limit;
+        this.maxWikipedia = maxWikipedia;
+        this.maxPerDomain = maxPerDomain;
+        this.pinWikipedia = pinWikipedia;
+    }
+
+    // Getter 方法
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMaxWikipedia() {
+        return maxWikipedia;
+    }
+
+    public int getMaxPerDomain() {
+        return maxPerDomain;
+    }
+
+    public boolean isPinWikipedia() {
+        return pinWikipedia;
+    }
+}
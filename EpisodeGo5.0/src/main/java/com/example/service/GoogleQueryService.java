@@ -1,51 +1,138 @@
 package com.example.service;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.example.fetch.FetchContext;
+import com.example.fetch.FetchResponse;
+import com.example.fetch.PageFetcher;
+import com.example.store.PageStore;
+import com.example.store.StoreCodec;
+
 @Service
 public class GoogleQueryService {
 
     private static final Logger logger = LoggerFactory.getLogger(GoogleQueryService.class);
 
+    private static final int RESULTS_PER_PAGE = 50;
+    private static final int PAGE_COUNT = 2;
+
+    private static final Map<String, String> NO_CACHE_HEADERS = Map.of(
+            "Cache-Control", "no-cache",
+            "Pragma", "no-cache");
+
+    private final PageFetcher pageFetcher;
+    private final SerpCache serpCache;
+    private final PageStore pageStore;
+    private final Duration storeTtl;
+
+    public GoogleQueryService(PageFetcher pageFetcher, SerpCache serpCache, PageStore pageStore,
+                              @Value("${episodego.page-store.serp-ttl:1h}") Duration storeTtl) {
+        this.pageFetcher = pageFetcher;
+        this.serpCache = serpCache;
+        this.pageStore = pageStore;
+        this.storeTtl = storeTtl;
+        pageStore.retain("serp:", storeTtl);
+    }
+
     /**
-     * 搜尋指定關鍵字，返回標題與 URL 的映射 (Map<標題, URL>)。
+     * 搜尋指定關鍵字，返回標題與 URL 的映射 (Map<標題, URL>)，依 Google 排名順序。
+     * 相同的查詢 (正規化後) 直接使用快取或磁碟儲存，不再向 Google 發出請求。
+     * 正規化只用於快取的鍵；送到 Google 的是使用者原本輸入的查詢。
      */
     public Map<String, String> search(String searchKeyword) throws IOException {
+        String normalized = QueryNormalizer.normalize(searchKeyword);
+        Map<String, String> cached = serpCache.get(normalized);
+        if (cached != null) {
+            return cached;
+        }
+        ByteBuffer stored = pageStore.get("serp:" + normalized, storeTtl);
+        if (stored != null) {
+            Map<String, String> results = StoreCodec.decodeResults(stored);
+            serpCache.put(normalized, results);
+            return results;
+        }
+
+        Map<String, String> results = Collections.unmodifiableMap(fetchResults(searchKeyword));
+        // 空結果多半是被 Google 擋下，不放進快取
+        if (!results.isEmpty()) {
+            serpCache.put(normalized, results);
+            pageStore.put("serp:" + normalized, StoreCodec.encodeResults(results));
+        }
+        return results;
+    }
+
+    /**
+     * 向 Google 抓取兩頁搜尋結果
+     */
+    private Map<String, String> fetchResults(String searchKeyword) throws IOException {
         String combinedKeyword = "Friends " + searchKeyword;
         String encoded = URLEncoder.encode(combinedKeyword, "utf-8");
 
-        // 抓取兩頁，每頁 50 筆，共 100 筆
-        Map<String, String> resultMap = new HashMap<>();
-        for (int start = 0; start < 100; start += 50) {
-            String url = "https://www.google.com/search?q=" + encoded + "&oe=utf8&num=50&start=" + start;
-            String content = fetchContent(url);
-            parseAndAddResults(content, resultMap);
+        // 同時抓取兩頁，每頁 50 筆，共 100 筆；先下載完的頁面先解析
+        SerpAccumulator accumulator = new SerpAccumulator(PAGE_COUNT);
+        FetchContext context = new FetchContext();
+        List<CompletableFuture<Void>> pages = new ArrayList<>(PAGE_COUNT);
+        for (int i = 0; i < PAGE_COUNT; i++) {
+            int pageIndex = i;
+            String url = "https://www.google.com/search?q=" + encoded
+                    + "&oe=utf8&num=" + RESULTS_PER_PAGE + "&start=" + (pageIndex * RESULTS_PER_PAGE);
+            pages.add(fetchContent(url, context)
+                    .thenAccept(doc -> parseAndAddResults(doc, pageIndex, accumulator)));
         }
-        return resultMap;
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(pages.toArray(new CompletableFuture<?>[0]));
+        // 任一頁失敗就不再等待其他頁
+        for (CompletableFuture<Void> page : pages) {
+            page.exceptionally(e -> {
+                all.completeExceptionally(e);
+                return null;
+            });
+        }
+        try {
+            all.get();
+        } catch (InterruptedException e) {
+            // 搜尋被取消 (例如使用者已離開)
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Search for '" + searchKeyword + "' was cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new CompletionException(e.getCause());
+        } finally {
+            // 被取消或失敗時，停止仍在進行的抓取 (含對沖請求) 並釋出排隊名額
+            context.cancelAll();
+        }
+        return accumulator.toRankedMap();
     }
 
     /**
-     * 解析 HTML，將結果放進 resultMap
+     * 解析 HTML，將結果放進第 pageIndex 頁的收集格
      */
-    private void parseAndAddResults(String content, Map<String, String> resultMap) {
-        Document doc = Jsoup.parse(content);
+    private void parseAndAddResults(Document doc, int pageIndex, SerpAccumulator accumulator) {
         Elements lis = doc.select("div.kCrYT");
         for (Element li : lis) {
             try {
@@ -66,7 +153,7 @@ public class GoogleQueryService {
                     if (title.isEmpty()) {
                         continue;
                     }
-                    resultMap.put(title, citeUrl);
+                    accumulator.add(pageIndex, title, citeUrl);
                     logger.info("Title: {}, URL: {}", title, citeUrl);
                 }
             } catch (IndexOutOfBoundsException e) {
@@ -76,35 +163,26 @@ public class GoogleQueryService {
     }
 
     /**
-     * 從 Google 搜尋頁抓取 HTML
+     * 從 Google 搜尋頁抓取 HTML 並解析
      */
-    private String fetchContent(String urlStr) throws IOException {
-        StringBuilder sb = new StringBuilder();
-
-        String[] userAgents = {
-            "Mozilla/5.0 (Windows NT 10.0; Win64; x64)",
-            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)",
-            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:36.0) Gecko/20100101 Firefox/36.0",
-            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:40.0) Gecko/20100101 Firefox/40.0"
-        };
-        String randomUA = userAgents[new Random().nextInt(userAgents.length)];
-
-        URL url = new URL(urlStr);
-        URLConnection conn = url.openConnection();
-        conn.setRequestProperty("User-agent", randomUA);
-        conn.setRequestProperty("Cache-Control", "no-cache");
-        conn.setRequestProperty("Pragma", "no-cache");
-
-        try (InputStream in = conn.getInputStream();
-             BufferedReader br = new BufferedReader(new InputStreamReader(in, "utf-8"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
-            }
-        } catch (IOException e) {
-            logger.error("Failed to fetch content from URL: {}", urlStr, e);
-            throw e;
-        }
-        return sb.toString();
+    private CompletableFuture<Document> fetchContent(String urlStr, FetchContext context) {
+        return context.track(pageFetcher.fetchHedged(urlStr, NO_CACHE_HEADERS, context))
+                .handle((FetchResponse response, Throwable error) -> {
+                    try {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            throw cause instanceof IOException
+                                    ? (IOException) cause
+                                    : new IOException("Failed to fetch " + urlStr, cause);
+                        }
+                        if (response.getStatusCode() >= 400) {
+                            throw new IOException("Server returned HTTP " + response.getStatusCode() + " for URL: " + urlStr);
+                        }
+                        return response.parse();
+                    } catch (IOException e) {
+                        logger.error("Failed to fetch content from URL: {}", urlStr, e);
+                        throw new UncheckedIOException(e);
+                    }
+                });
     }
 }
@@ -0,0 +1,358 @@
+package com.example.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * 關鍵字加權計分器 (Aho-Corasick 多字串自動機)
+ *
+ * 每條規則 = 權重 + 一組關鍵字，文字中出現任一關鍵字即加上該權重 (每條規則最多加一次)。
+ * 所有關鍵字預先編成一個自動機，計分時只需掃描文字一次，並可順便統計各關鍵字出現次數。
+ * 大小寫在比對時逐字轉換 (ASCII 直接編進轉移表)，不需要先複製一份轉小寫的全文。
+ */
+public final class KeywordScorer {
+
+    private static final int ASCII = 128;
+
+    private final List<Rule> rules;
+    private final String[] terms;
+    /** terms[i] 屬於哪些規則 */
+    private final int[][] termRules;
+    /** 含空字串的規則 (String.contains("") 永遠成立) */
+    private final boolean[] alwaysFires;
+
+    // 自動機：ASCII 使用完整轉移表 (攤平成一維，state * 128 + c，大寫與小寫共用同一欄)，
+    // 其餘字元 (中文等) 轉小寫後走失敗連結
+    private final int[] asciiNext;
+    private final List<Map<Character, Integer>> otherNext;
+    private final int[] fail;
+    private final int[][] output;
+
+    private KeywordScorer(List<Rule> rules) {
+        this.rules = rules;
+
+        Map<String, List<Integer>> termToRules = new LinkedHashMap<>();
+        alwaysFires = new boolean[rules.size()];
+        for (int r = 0; r < rules.size(); r++) {
+            for (String term : rules.get(r).terms) {
+                if (term.isEmpty()) {
+                    alwaysFires[r] = true;
+                } else {
+                    termToRules.computeIfAbsent(term, k -> new ArrayList<>()).add(r);
+                }
+            }
+        }
+        terms = termToRules.keySet().toArray(new String[0]);
+        termRules = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            termRules[t] = termToRules.get(terms[t]).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // 1. 建立 trie
+        List<int[]> ascii = new ArrayList<>();
+        List<Map<Character, Integer>> other = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        newState(ascii, other, out);
+        for (int t = 0; t < terms.length; t++) {
+            int state = 0;
+            for (char c : terms[t].toCharArray()) {
+                int next = c < ASCII ? ascii.get(state)[c] : other.get(state).getOrDefault(c, -1);
+                if (next < 0) {
+                    next = newState(ascii, other, out);
+                    if (c < ASCII) {
+                        ascii.get(state)[c] = next;
+                    } else {
+                        other.get(state).put(c, next);
+                    }
+                }
+                state = next;
+            }
+            out.get(state).add(t);
+        }
+
+        // 2. BFS 建立失敗連結，並把 ASCII 轉移補成完整的 DFA
+        int stateCount = ascii.size();
+        fail = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        int[] root = ascii.get(0);
+        for (int c = 0; c < ASCII; c++) {
+            if (root[c] < 0) {
+                root[c] = 0;
+            } else {
+                queue.add(root[c]);
+            }
+        }
+        queue.addAll(other.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            out.get(state).addAll(out.get(fail[state]));
+            int[] row = ascii.get(state);
+            int[] failRow = ascii.get(fail[state]);
+            for (int c = 0; c < ASCII; c++) {
+                if (row[c] < 0) {
+                    row[c] = failRow[c];
+                } else {
+                    fail[row[c]] = failRow[c];
+                    queue.add(row[c]);
+                }
+            }
+            for (Map.Entry<Character, Integer> e : other.get(state).entrySet()) {
+                fail[e.getValue()] = nextOther(other, fail[state], e.getKey());
+                queue.add(e.getValue());
+            }
+        }
+
+        asciiNext = new int[stateCount * ASCII];
+        for (int st = 0; st < stateCount; st++) {
+            int[] row = ascii.get(st);
+            for (int c = 'A'; c <= 'Z'; c++) {
+                row[c] = row[Character.toLowerCase(c)];
+            }
+            System.arraycopy(row, 0, asciiNext, st * ASCII, ASCII);
+        }
+        otherNext = other;
+        output = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            output[s] = out.get(s).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private static int newState(List<int[]> ascii, List<Map<Character, Integer>> other, List<List<Integer>> out) {
+        int[] row = new int[ASCII];
+        Arrays.fill(row, -1);
+        ascii.add(row);
+        other.add(new HashMap<>());
+        out.add(new ArrayList<>());
+        return ascii.size() - 1;
+    }
+
+    private int nextOther(List<Map<Character, Integer>> other, int state, char c) {
+        while (true) {
+            Integer next = other.get(state).get(c);
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 建立新的計分器：沿用目前所有規則，並為每個查詢關鍵字加上一條規則 (權重 1.0)
+     * 查詢字串的切分方式與原本相同：轉小寫 (不依預設語系) 後以空白切開；
+     * 呼叫者應先以 QueryNormalizer 正規化，計分的關鍵字才會與快取、合併請求的鍵一致
+     */
+    public KeywordScorer withQuery(String query) {
+        List<Rule> merged = new ArrayList<>(rules);
+        for (String kw : query.toLowerCase(Locale.ROOT).split("\\s+")) {
+            merged.add(new Rule(1.0, kw));
+        }
+        return new KeywordScorer(merged);
+    }
+
+    /**
+     * 目前的規則 (依加入順序)
+     */
+    List<Rule> rules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * 可能得到的最高分 (所有規則都成立)
+     */
+    public double maxScore() {
+        double max = 0.0;
+        for (Rule rule : rules) {
+            max += rule.weight;
+        }
+        return max;
+    }
+
+    /**
+     * 計算文字的分數 (不分大小寫)；所有規則都成立後即提早結束掃描
+     */
+    public double score(CharSequence text) {
+        return new Cursor(false).feed(text).finish().getScore();
+    }
+
+    /**
+     * 計算文字的分數並統計每個關鍵字出現的次數 (不分大小寫)
+     */
+    public Match match(CharSequence text) {
+        return new Cursor(true).feed(text).finish();
+    }
+
+    /**
+     * 分段掃描：文字可以一段一段餵進來 (例如逐個文字節點、或解碼中的緩衝區)，
+     * 關鍵字跨段也能比對到
+     */
+    public Cursor cursor(boolean countAll) {
+        return new Cursor(countAll);
+    }
+
+    public final class Cursor {
+        private final boolean countAll;
+        private final boolean[] fired = alwaysFires.clone();
+        private final int[] counts = new int[terms.length];
+        private int remaining;
+        private int state;
+
+        private Cursor(boolean countAll) {
+            this.countAll = countAll;
+            for (boolean f : fired) {
+                if (!f) {
+                    remaining++;
+                }
+            }
+        }
+
+        /**
+         * 是否還需要更多文字 (只計分且所有規則都已成立時為 false)
+         */
+        public boolean wantsMore() {
+            return countAll || remaining > 0;
+        }
+
+        public Cursor feed(CharSequence text) {
+            int length = text.length();
+            for (int i = 0; i < length && wantsMore(); i++) {
+                step(text.charAt(i));
+            }
+            return this;
+        }
+
+        public Cursor feed(char[] buffer, int offset, int length) {
+            int end = offset + length;
+            for (int i = offset; i < end && wantsMore(); i++) {
+                step(buffer[i]);
+            }
+            return this;
+        }
+
+        private void step(char c) {
+            if (c >= ASCII) {
+                // 與 String.toLowerCase 相同的逐字轉換 (部分字元如 KELVIN SIGN 轉完會變成 ASCII)
+                c = Character.toLowerCase(c);
+            }
+            state = c < ASCII ? asciiNext[state * ASCII + c] : nextOther(otherNext, state, c);
+            int[] matched = output[state];
+            if (matched.length == 0) {
+                return;
+            }
+            for (int t : matched) {
+                counts[t]++;
+                for (int r : termRules[t]) {
+                    if (!fired[r]) {
+                        fired[r] = true;
+                        remaining--;
+                    }
+                }
+            }
+        }
+
+        /**
+         * 結束掃描並計算分數
+         */
+        public Match finish() {
+            // 依規則順序加總，與逐條 contains 判斷的結果完全相同
+            double score = 0.0;
+            for (int r = 0; r < rules.size(); r++) {
+                if (fired[r]) {
+                    score += rules.get(r).weight;
+                }
+            }
+            return new Match(score, terms, counts.clone());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 一條計分規則：出現任一關鍵字即加上權重
+     */
+    static final class Rule {
+        private final double weight;
+        private final String[] terms;
+
+        private Rule(double weight, String... terms) {
+            this.weight = weight;
+            this.terms = terms;
+        }
+
+        double weight() {
+            return weight;
+        }
+
+        List<String> terms() {
+            return List.of(terms);
+        }
+    }
+
+    public static final class Builder {
+        private final List<Rule> rules = new ArrayList<>();
+
+        /**
+         * 新增規則 (關鍵字需為小寫)
+         */
+        public Builder rule(double weight, String... terms) {
+            rules.add(new Rule(weight, terms));
+            return this;
+        }
+
+        public KeywordScorer build() {
+            return new KeywordScorer(new ArrayList<>(rules));
+        }
+    }
+
+    /**
+     * 掃描結果：分數與各關鍵字出現次數
+     * 只計分時 (score) 會提早結束掃描，次數僅供參考；需要完整次數請用 match
+     */
+    public static final class Match {
+        private final double score;
+        private final String[] terms;
+        private final int[] counts;
+
+        private Match(double score, String[] terms, int[] counts) {
+            this.score = score;
+            this.terms = terms;
+            this.counts = counts;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * 關鍵字出現次數 (可重疊)
+         */
+        public int count(String term) {
+            for (int t = 0; t < terms.length; t++) {
+                if (terms[t].equals(term)) {
+                    return counts[t];
+                }
+            }
+            return 0;
+        }
+
+        public Map<String, Integer> getCounts() {
+            Map<String, Integer> map = new LinkedHashMap<>();
+            for (int t = 0; t < terms.length; t++) {
+                map.put(terms[t], counts[t]);
+            }
+            return map;
+        }
+    }
+}
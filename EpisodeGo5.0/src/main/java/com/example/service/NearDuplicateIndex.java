@@ -0,0 +1,71 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * SimHash 指紋的近似重複索引 (執行緒安全)
+ *
+ * 64 個位元切成 maxDistance + 1 段，每段各一個雜湊表。距離不超過 maxDistance 的兩個指紋
+ * 至少有一段完全相同 (鴿籠原理)，因此只需比對任一段相同的候選，不必逐一比對所有指紋。
+ */
+final class NearDuplicateIndex<V> {
+
+    private final int maxDistance;
+    private final int[] bandStart;
+    private final List<Map<Long, List<Entry<V>>>> bands;
+
+    NearDuplicateIndex(int maxDistance) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 63));
+        int bandCount = this.maxDistance + 1;
+        this.bandStart = new int[bandCount + 1];
+        for (int b = 0; b <= bandCount; b++) {
+            bandStart[b] = b * 64 / bandCount;
+        }
+        this.bands = new ArrayList<>(bandCount);
+        for (int b = 0; b < bandCount; b++) {
+            bands.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * 已有相近的指紋時回傳它的值；否則加入並回傳 null
+     */
+    synchronized V putIfAbsent(long fingerprint, V value) {
+        return putIfAbsent(fingerprint, value, existing -> true);
+    }
+
+    /**
+     * 同上，但只看 accept 接受的值 (例如只比對其他網站的頁面)
+     */
+    synchronized V putIfAbsent(long fingerprint, V value, Predicate<V> accept) {
+        for (int b = 0; b < bands.size(); b++) {
+            List<Entry<V>> bucket = bands.get(b).get(bandKey(fingerprint, b));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry<V> entry : bucket) {
+                if (SimHash.distance(entry.fingerprint, fingerprint) <= maxDistance && accept.test(entry.value)) {
+                    return entry.value;
+                }
+            }
+        }
+        Entry<V> entry = new Entry<>(fingerprint, value);
+        for (int b = 0; b < bands.size(); b++) {
+            bands.get(b).computeIfAbsent(bandKey(fingerprint, b), k -> new ArrayList<>(1)).add(entry);
+        }
+        return null;
+    }
+
+    private long bandKey(long fingerprint, int band) {
+        int width = bandStart[band + 1] - bandStart[band];
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        return (fingerprint >>> bandStart[band]) & mask;
+    }
+
+    private record Entry<V>(long fingerprint, V value) {
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.service;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * 最近抓取失敗的網址 (連線錯誤、逾時、HTTP 5xx/429、非 HTML 內容)
+ *
+ * 在存活時間內再次遇到這些網址時直接視為失敗，不再花一次逾時等待。
+ * 命中次數透過 actuator 的 cache.* 指標公開 (cache=negative)。
+ */
+@Component
+public class NegativeCache {
+
+    private final Cache<String, String> cache;
+
+    public NegativeCache(MeterRegistry meterRegistry,
+                         @Value("${episodego.negative-cache.max-size:10000}") long maxSize,
+                         @Value("${episodego.negative-cache.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "negative");
+    }
+
+    /**
+     * 失敗原因，網址不在快取中則回傳 null
+     */
+    public String get(String url) {
+        return cache.getIfPresent(url);
+    }
+
+    public void put(String url, String reason) {
+        cache.put(url, reason);
+    }
+}
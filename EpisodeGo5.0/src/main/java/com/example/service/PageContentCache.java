@@ -0,0 +1,210 @@
+package com.example.service;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.example.model.ParsedPage;
+import com.example.store.StoreCodec;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * 已抓取網頁的內容快取 (鍵為網址)
+ *
+ * 解析後的網頁 (文字、連結、基本資訊) 壓縮後存放在堆積外：容量上限切成數塊 direct ByteBuffer (slab)，
+ * 每塊再分成固定大小的區塊，一個網頁佔用數個區塊；堆積上只留下 Caffeine 的項目與區塊編號。
+ * 以佔用的區塊大小計算容量上限，超過時由 Caffeine (W-TinyLFU) 淘汰，並依寫入時間過期。
+ * 項目被移除 (淘汰、過期或覆寫) 時由 removalListener 立即歸還區塊，slab 本身不釋放，
+ * 因此 direct memory 用量不超過容量上限，也不依賴 GC 回收。
+ */
+@Component
+public class PageContentCache {
+
+    static final int BLOCK_SIZE = 4 * 1024;
+    private static final int SLAB_SIZE = 16 * 1024 * 1024;
+
+    private final Slabs slabs;
+    private final Cache<String, Stored> cache;
+
+    public PageContentCache(MeterRegistry meterRegistry,
+                            @Value("${episodego.page-cache.max-size:256MB}") DataSize maxSize,
+                            @Value("${episodego.page-cache.ttl:6h}") Duration ttl) {
+        this.slabs = new Slabs(Math.toIntExact(maxSize.toBytes() / BLOCK_SIZE));
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight((long) slabs.totalBlocks * BLOCK_SIZE)
+                .weigher((String url, Stored page) -> page.blocks.length * BLOCK_SIZE)
+                .expireAfterWrite(ttl)
+                // 在移除的執行緒上同步歸還區塊，之後的 put 馬上可以使用
+                .executor(Runnable::run)
+                .removalListener((url, page, cause) -> {
+                    if (page != null) {
+                        page.release(slabs);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "pages");
+        Gauge.builder("episodego.page-cache.bytes", cache,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Off-heap bytes held by the page content cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 取得快取的網頁，沒有則回傳 null
+     */
+    public ParsedPage get(String url) {
+        Stored stored = cache.getIfPresent(cacheKey(url));
+        byte[] compressed = stored != null ? stored.read(slabs) : null;
+        return compressed != null ? StoreCodec.decodePage(ByteBuffer.wrap(compressed)) : null;
+    }
+
+    public void put(String url, ParsedPage page) {
+        putEncoded(url, StoreCodec.encodePage(page));
+    }
+
+    /**
+     * 放入已用 StoreCodec 壓縮過的網頁 (與磁碟儲存共用同一份編碼結果)；
+     * 超過整個容量上限、或空間都被其他正在放入的網頁佔用時不快取
+     */
+    public void putEncoded(String url, byte[] compressed) {
+        int[] blocks = allocate((compressed.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (blocks == null) {
+            return;
+        }
+        slabs.write(blocks, compressed);
+        cache.put(cacheKey(url), new Stored(blocks, compressed.length));
+    }
+
+    /**
+     * 取得 count 個區塊；空間不足時 (Caffeine 的權重在上限內，但放入新網頁會超過) 先淘汰最冷的網頁
+     */
+    private int[] allocate(int count) {
+        if (count > slabs.totalBlocks) {
+            return null;
+        }
+        int[] blocks;
+        while ((blocks = slabs.allocate(count)) == null) {
+            Map<String, Stored> coldest = cache.policy().eviction().orElseThrow().coldest(1);
+            if (coldest.isEmpty()) {
+                return null;
+            }
+            coldest.forEach(cache.asMap()::remove);
+        }
+        return blocks;
+    }
+
+    /**
+     * 快取鍵：去掉 # 之後的片段 (同一份文件)
+     */
+    private String cacheKey(String url) {
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+
+    /**
+     * 快取中的一個網頁：佔用的區塊與實際長度。
+     * 讀取與歸還都持有此物件的鎖，已歸還 (可能被其他網頁重複使用) 的區塊不會被讀到
+     */
+    private static final class Stored {
+        private final int[] blocks;
+        private final int length;
+        private boolean released;
+
+        private Stored(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+
+        synchronized byte[] read(Slabs slabs) {
+            return released ? null : slabs.read(blocks, length);
+        }
+
+        synchronized void release(Slabs slabs) {
+            if (!released) {
+                released = true;
+                slabs.free(blocks);
+            }
+        }
+    }
+
+    /**
+     * 固定數量的 direct slab 與其中空閒區塊的堆疊；slab 在第一次需要時才配置
+     */
+    private static final class Slabs {
+        private final int totalBlocks;
+        private final int blocksPerSlab;
+        private final ByteBuffer[] slabs;
+        private final int[] free;
+        private int freeCount;
+        private int allocatedBlocks;
+
+        Slabs(int totalBlocks) {
+            this.totalBlocks = totalBlocks;
+            this.blocksPerSlab = Math.max(1, Math.min(totalBlocks, SLAB_SIZE / BLOCK_SIZE));
+            this.slabs = new ByteBuffer[(totalBlocks + blocksPerSlab - 1) / blocksPerSlab];
+            this.free = new int[totalBlocks];
+        }
+
+        synchronized int[] allocate(int count) {
+            while (freeCount < count && allocatedBlocks < totalBlocks) {
+                int size = Math.min(blocksPerSlab, totalBlocks - allocatedBlocks);
+                slabs[allocatedBlocks / blocksPerSlab] = ByteBuffer.allocateDirect(size * BLOCK_SIZE);
+                for (int i = allocatedBlocks + size - 1; i >= allocatedBlocks; i--) {
+                    free[freeCount++] = i;
+                }
+                allocatedBlocks += size;
+            }
+            if (freeCount < count) {
+                return null;
+            }
+            int[] blocks = new int[count];
+            for (int i = 0; i < count; i++) {
+                blocks[i] = free[--freeCount];
+            }
+            return blocks;
+        }
+
+        synchronized void free(int[] blocks) {
+            for (int block : blocks) {
+                free[freeCount++] = block;
+            }
+        }
+
+        // 以絕對位置讀寫，不改動 slab 的 position，多個執行緒可同時讀寫不同區塊
+
+        void write(int[] blocks, byte[] data) {
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = i * BLOCK_SIZE;
+                slab(blocks[i]).put(position(blocks[i]), data, offset, Math.min(BLOCK_SIZE, data.length - offset));
+            }
+        }
+
+        byte[] read(int[] blocks, int length) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < blocks.length; i++) {
+                int offset = i * BLOCK_SIZE;
+                slab(blocks[i]).get(position(blocks[i]), data, offset, Math.min(BLOCK_SIZE, length - offset));
+            }
+            return data;
+        }
+
+        private ByteBuffer slab(int block) {
+            return slabs[block / blocksPerSlab];
+        }
+
+        private int position(int block) {
+            return block % blocksPerSlab * BLOCK_SIZE;
+        }
+    }
+}
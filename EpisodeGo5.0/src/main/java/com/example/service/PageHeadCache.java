@@ -0,0 +1,46 @@
+package com.example.service;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.model.PageHead;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * 主頁的連結與指紋 (串流讀取的部分內容，不放進網頁內容快取)
+ *
+ * 命中次數透過 actuator 的 cache.* 指標公開 (cache=page-head)。
+ */
+@Component
+public class PageHeadCache {
+
+    private final Cache<String, PageHead> cache;
+
+    public PageHeadCache(MeterRegistry meterRegistry,
+                         @Value("${episodego.page-head.cache.max-size:10000}") long maxSize,
+                         @Value("${episodego.page-head.cache.ttl:6h}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "page-head");
+    }
+
+    /**
+     * 網址的主頁資訊，不在快取中則回傳 null
+     */
+    public PageHead get(String url) {
+        return cache.getIfPresent(url);
+    }
+
+    public void put(String url, PageHead head) {
+        cache.put(url, head);
+    }
+}
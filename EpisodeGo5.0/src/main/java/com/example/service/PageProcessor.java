@@ -0,0 +1,273 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.fetch.CircuitOpenException;
+import com.example.fetch.FetchContext;
+import com.example.fetch.FetchProperties;
+import com.example.fetch.FetchResponse;
+import com.example.fetch.HostCircuitBreakers;
+import com.example.fetch.PageFetcher;
+import com.example.fetch.PageLinks;
+import com.example.fetch.ScannedPage;
+import com.example.fetch.SharedFetchContext;
+import com.example.model.PageHead;
+import com.example.model.ParsedPage;
+import com.example.store.PageStore;
+import com.example.store.StoreCodec;
+
+/**
+ * 網頁處理：每個網址只抓取、解析一次，同時取出連結、可見文字與基本資訊
+ */
+@Service
+public class PageProcessor {
+
+    private final PageFetcher pageFetcher;
+    private final FetchProperties fetchProperties;
+    private final PageContentCache pageCache;
+    private final NegativeCache negativeCache;
+    private final PageStore pageStore;
+    private final Duration storeTtl;
+    private final PageHeadCache headCache;
+    private final int headLinks;
+    private final int headTextChars;
+
+    // 進行中的下載 (所有查詢共用)，鍵與磁碟儲存相同
+    private final SingleFlight<String, ParsedPage> inFlight = new SingleFlight<>();
+    private final SingleFlight<String, PageHead> headsInFlight = new SingleFlight<>();
+
+    public PageProcessor(PageFetcher pageFetcher, FetchProperties fetchProperties,
+                         PageContentCache pageCache, NegativeCache negativeCache, PageStore pageStore,
+                         @Value("${episodego.page-store.page-ttl:7d}") Duration storeTtl,
+                         PageHeadCache headCache,
+                         @Value("${episodego.page-head.max-links:8}") int headLinks,
+                         @Value("${episodego.page-head.text-chars:4096}") int headTextChars) {
+        this.pageFetcher = pageFetcher;
+        this.fetchProperties = fetchProperties;
+        this.pageCache = pageCache;
+        this.negativeCache = negativeCache;
+        this.pageStore = pageStore;
+        this.storeTtl = storeTtl;
+        pageStore.retain("page:", storeTtl);
+        this.headCache = headCache;
+        this.headLinks = headLinks;
+        this.headTextChars = headTextChars;
+    }
+
+    /**
+     * 只取主頁計分需要的部分：前 max-links 個連結與可見文字前 text-chars 個字的指紋
+     * 已有完整網頁 (快取或磁碟) 時直接取用；否則串流讀取，足夠後即停止下載，結果另外快取
+     */
+    public CompletableFuture<PageHead> head(String url, FetchContext context, double priority) {
+        String document = documentKey(url);
+        PageHead head = headCache.get(document);
+        if (head != null) {
+            return CompletableFuture.completedFuture(head);
+        }
+        ParsedPage cached = pageCache.get(document);
+        if (cached == null) {
+            ByteBuffer stored = pageStore.get(storeKey(document), storeTtl);
+            if (stored != null) {
+                cached = StoreCodec.decodePage(stored);
+            }
+        }
+        if (cached != null) {
+            // 完整網頁的文字含導覽與側欄，算出的指紋與串流掃描的不同，不用來比對近似重複
+            List<String> links = cached.getLinks();
+            return CompletableFuture.completedFuture(new PageHead(cached.getUrl(),
+                    List.copyOf(links.size() > headLinks ? links.subList(0, headLinks) : links), SimHash.NONE));
+        }
+        String failure = negativeCache.get(document);
+        if (failure != null) {
+            return CompletableFuture.failedFuture(new IOException("Recently failed: " + url + " (" + failure + ")"));
+        }
+        CompletableFuture<PageHead> mine = headsInFlight
+                .share(document, SharedFetchContext::new, shared -> shared.join(context),
+                        shared -> shared.leave(context), shared -> scan(url, document, shared, priority))
+                .orTimeout(fetchProperties.getCallerTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        return context.track(mine);
+    }
+
+    private CompletableFuture<PageHead> scan(String url, String document, FetchContext context, double priority) {
+        CompletableFuture<ScannedPage> fetch = pageFetcher.scanHedged(url, context, priority, headLinks, headTextChars);
+        CompletableFuture<PageHead> scanned = fetch.thenApply(response -> {
+            if (HostCircuitBreakers.isFailureStatus(response.getStatusCode())) {
+                throw new UncheckedIOException(new IOException(
+                        rememberFailure(url, "HTTP " + response.getStatusCode())));
+            }
+            if (!response.isHtml()) {
+                throw new UncheckedIOException(new IOException(
+                        rememberFailure(url, "content type " + response.getContentType())));
+            }
+            PageHead head = toPageHead(response.getUri().toString(), response.getLinks(), response.getText());
+            headCache.put(document, head);
+            return head;
+        });
+        fetch.whenComplete((response, e) -> {
+            if (e != null && !fetch.isCancelled() && !(unwrap(e) instanceof CircuitOpenException)) {
+                rememberFailure(url, String.valueOf(unwrap(e)));
+            }
+        });
+        scanned.whenComplete((head, e) -> {
+            if (scanned.isCancelled()) {
+                fetch.cancel(true);
+            }
+        });
+        return scanned;
+    }
+
+    /**
+     * @param text 頁面本身的可見文字 (不含導覽與側欄，見 HtmlScanner)
+     */
+    private PageHead toPageHead(String url, List<String> links, String text) {
+        List<String> first = links.size() > headLinks ? links.subList(0, headLinks) : links;
+        String prefix = text.length() > headTextChars ? text.substring(0, headTextChars) : text;
+        return new PageHead(url, List.copyOf(first), SimHash.of(prefix));
+    }
+
+    /**
+     * 非同步抓取並解析網頁；記憶體快取或磁碟儲存中已有的網頁不再連線，
+     * 其他查詢正在下載的網頁則共用同一次下載；最近失敗過的網址直接失敗
+     */
+    public CompletableFuture<ParsedPage> process(String url, FetchContext context) {
+        return process(url, context, 0);
+    }
+
+    /**
+     * 同上；需要連線時依 priority 排隊 (同一個查詢內越大越先送出)
+     */
+    public CompletableFuture<ParsedPage> process(String url, FetchContext context, double priority) {
+        // 快取、磁碟儲存、失敗清單與合併下載都以正規化後的網址為鍵 (http/https、行動版等視為同一份)
+        String document = documentKey(url);
+        ParsedPage cached = pageCache.get(document);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        String failure = negativeCache.get(document);
+        if (failure != null) {
+            return CompletableFuture.failedFuture(new IOException("Recently failed: " + url + " (" + failure + ")"));
+        }
+        ByteBuffer stored = pageStore.get(storeKey(document), storeTtl);
+        if (stored != null) {
+            // 磁碟與快取是同一種編碼，直接搬進快取，不需要重新壓縮
+            byte[] encoded = new byte[stored.remaining()];
+            stored.get(encoded);
+            pageCache.putEncoded(document, encoded);
+            return CompletableFuture.completedFuture(StoreCodec.decodePage(ByteBuffer.wrap(encoded)));
+        }
+        // 同一個網址同時只下載、解析一次 (不論是哪個查詢發出的)；每個呼叫者各自計時、各自取消。
+        // 下載的對沖名額與內容額度由所有等待中的查詢共同提供，用量算在每一個等待者上
+        CompletableFuture<ParsedPage> mine = inFlight
+                .share(storeKey(document), SharedFetchContext::new, shared -> shared.join(context),
+                        shared -> shared.leave(context), shared -> fetchAndParse(url, document, shared, priority))
+                .orTimeout(fetchProperties.getCallerTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        return context.track(mine);
+    }
+
+    /**
+     * 實際抓取並解析；取消回傳的 future 會中止底層的連線
+     * @param context 所有等待這次下載的查詢 (對沖名額與內容額度)
+     */
+    private CompletableFuture<ParsedPage> fetchAndParse(String url, String document, FetchContext context,
+                                                        double priority) {
+        CompletableFuture<FetchResponse> fetch = pageFetcher.fetchHedged(url, context, priority);
+        CompletableFuture<ParsedPage> parsed = fetch.thenApply(response -> {
+            try {
+                // 伺服器錯誤 (5xx、429) 與非網頁內容不解析，記在失敗清單中一段時間；
+                // 其他錯誤頁 (404 等) 與原本一樣照常解析、計分
+                if (HostCircuitBreakers.isFailureStatus(response.getStatusCode())) {
+                    throw new IOException(rememberFailure(url, "HTTP " + response.getStatusCode()));
+                }
+                if (!response.isHtml()) {
+                    throw new IOException(rememberFailure(url, "content type " + response.getContentType()));
+                }
+                ParsedPage page = toParsedPage(response);
+                // 只快取成功的回應，暫時性的錯誤頁下次重新抓取；
+                // 因查詢額度用完而截斷的內容只給這次使用，超過每頁上限的截斷每次都相同，照常保存
+                if (response.getStatusCode() < 400
+                        && response.getTruncation() != FetchResponse.Truncation.QUERY_BUDGET) {
+                    byte[] encoded = StoreCodec.encodePage(page);
+                    pageCache.putEncoded(document, encoded);
+                    pageStore.put(storeKey(document), encoded);
+                }
+                return page;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        fetch.whenComplete((response, e) -> {
+            // 連線錯誤、逾時 (斷路器開啟與取消不算，那不是這個網址的問題)
+            if (e != null && !fetch.isCancelled() && !(unwrap(e) instanceof CircuitOpenException)) {
+                rememberFailure(url, String.valueOf(unwrap(e)));
+            }
+        });
+        parsed.whenComplete((page, e) -> {
+            if (parsed.isCancelled()) {
+                fetch.cancel(true);
+            }
+        });
+        return parsed;
+    }
+
+    private String rememberFailure(String url, String reason) {
+        negativeCache.put(documentKey(url), reason);
+        return reason + " for URL: " + url;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static String storeKey(String document) {
+        return "page:" + document;
+    }
+
+    /**
+     * 同一份文件的鍵 (正規化後的網址)；無法正規化時只去掉 # 之後的片段
+     */
+    private static String documentKey(String url) {
+        String canonical = UrlCanonicalizer.canonicalize(url);
+        if (canonical != null) {
+            return canonical;
+        }
+        int hash = url.indexOf('#');
+        return hash >= 0 ? url.substring(0, hash) : url;
+    }
+
+    private ParsedPage toParsedPage(FetchResponse response) throws IOException {
+        Document doc = response.parse();
+
+        // 與串流掃描相同，只留其他網頁的連結 (主頁的前幾個連結不論從快取或掃描取得都相同)
+        List<String> links = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            String href = link.attr("abs:href");
+            if (PageLinks.isPageLink(link.attr("href").trim(), href)) {
+                links.add(href);
+            }
+        }
+
+        Element description = doc.selectFirst("meta[name=description]");
+        return new ParsedPage(
+                response.getUri().toString(),
+                response.getStatusCode(),
+                response.getContentType(),
+                doc.title(),
+                description != null ? description.attr("content") : "",
+                doc.text(),
+                Collections.unmodifiableList(links));
+    }
+}
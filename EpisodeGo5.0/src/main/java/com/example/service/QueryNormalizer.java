@@ -0,0 +1,23 @@
+package com.example.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 查詢字串正規化：作為快取與合併請求的鍵
+ *
+ * 全形轉半形 (NFKC，例如「ＲＡＣＨＥＬ」、全形空白)、去除前後空白、轉小寫、連續空白合併成一個
+ */
+public final class QueryNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private QueryNormalizer() {
+    }
+
+    public static String normalize(String query) {
+        String folded = Normalizer.normalize(query, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(folded.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,38 +1,93 @@
 package com.example.service;
 
-import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.example.fetch.FetchContext;
+import com.example.model.PageHead;
 import com.example.model.SearchResult;
+import com.example.model.SelectionPolicy;
 import com.example.model.WebPage;
 
 @Service
 public class SearchEngine {
 
+    private static final Logger logger = LoggerFactory.getLogger(SearchEngine.class);
+
     // 關鍵字與權重
-    private final double FRIENDS_WEIGHT = 3.0;
-    private final double RACHEL_WEIGHT = 2.5;
-    private final double MONICA_WEIGHT = 2.5;
-    private final double CHANDLER_WEIGHT = 2.0;
-    private final double JOEY_WEIGHT = 2.0;
-    private final double PHOEBE_WEIGHT = 2.0;
-    private final double ROSS_WEIGHT = 2.0;
+    private static final double FRIENDS_WEIGHT = 3.0;
+    private static final double RACHEL_WEIGHT = 2.5;
+    private static final double MONICA_WEIGHT = 2.5;
+    private static final double CHANDLER_WEIGHT = 2.0;
+    private static final double JOEY_WEIGHT = 2.0;
+    private static final double PHOEBE_WEIGHT = 2.0;
+    private static final double ROSS_WEIGHT = 2.0;
 
     // 中英文關鍵字
-    private final double CENTRAL_PERK_WEIGHT = 2.0; 
-    private final double SIX_FRIENDS_WEIGHT = 2.0; 
-    private final double LIU_REN_XING_WEIGHT = 1.5; 
-    private final double ERIC_ASCELINE_WEIGHT = 2.5; 
-    private final double DAVID_CRANE_WEIGHT = 2.5; 
+    private static final double CENTRAL_PERK_WEIGHT = 2.0; 
+    private static final double SIX_FRIENDS_WEIGHT = 2.0; 
+    private static final double LIU_REN_XING_WEIGHT = 1.5; 
+    private static final double ERIC_ASCELINE_WEIGHT = 2.5; 
+    private static final double DAVID_CRANE_WEIGHT = 2.5; 
+
+    private static final double SUB_PAGE_RATIO = 0.5;
 
-    private final double SUB_PAGE_RATIO = 0.5;
+    // 與主頁相同關鍵字，預先編成自動機；查詢關鍵字在每次查詢時併入 (測試直接以這份規則比對)
+    static final KeywordScorer KEYWORD_SCORER = KeywordScorer.builder()
+            .rule(FRIENDS_WEIGHT, "friends", "six friends", "六人行")
+            .rule(RACHEL_WEIGHT, "rachel")
+            .rule(MONICA_WEIGHT, "monica")
+            .rule(CHANDLER_WEIGHT, "chandler")
+            .rule(JOEY_WEIGHT, "joey")
+            .rule(PHOEBE_WEIGHT, "phoebe")
+            .rule(ROSS_WEIGHT, "ross")
+            .rule(CENTRAL_PERK_WEIGHT, "central perk", "中央咖啡館")
+            .rule(LIU_REN_XING_WEIGHT, "liu renxing", "六人行")
+            .rule(ERIC_ASCELINE_WEIGHT, "eric ascieline")
+            .rule(DAVID_CRANE_WEIGHT, "david crane")
+            .build();
+
+    private final PageProcessor pageProcessor;
+    private final long queryTimeoutMillis;
+    private final boolean pruning;
+    private final int pruningParallelism;
+    /** 主頁指紋距離不超過此值視為近似重複；負數表示不檢查 */
+    private final int nearDuplicateDistance;
+
+    public SearchEngine(PageProcessor pageProcessor,
+                        @Value("${episodego.search.query-timeout-ms:20000}") long queryTimeoutMillis,
+                        @Value("${episodego.search.pruning.enabled:false}") boolean pruning,
+                        @Value("${episodego.search.pruning.parallelism:16}") int pruningParallelism,
+                        @Value("${episodego.search.near-duplicate.enabled:false}") boolean nearDuplicates,
+                        @Value("${episodego.search.near-duplicate.max-distance:3}") int nearDuplicateDistance) {
+        this.pageProcessor = pageProcessor;
+        this.queryTimeoutMillis = queryTimeoutMillis;
+        // 近似重複會把已入選的代表頁換成原始順序較前面、分數可能較低的複本，名單門檻因此會下降；
+        // 剪枝假設門檻只升不降 (被剪掉的頁面之後不再計算)，兩者不同時使用
+        if (pruning && nearDuplicates) {
+            logger.warn("Pruning is disabled because near-duplicate demotion is enabled");
+        }
+        this.pruning = pruning && !nearDuplicates;
+        this.pruningParallelism = Math.max(1, pruningParallelism);
+        this.nearDuplicateDistance = nearDuplicates ? nearDuplicateDistance : -1;
+    }
 
     /**
      * 搜尋並排序結果
@@ -41,202 +96,394 @@ public class SearchEngine {
      * @return 排序後的搜尋結果（最多15筆，維基百科最多3筆，且第一筆是維基百科）
      */
     public List<SearchResult> searchAndSort(List<WebPage> pages, String query) {
-        List<SearchResult> results = new ArrayList<>();
-
-        // 1. 計算主頁 + 子網頁的總分
-        for (WebPage page : pages) {
-            double totalScore = calculateScoreWithSubPages(page, query);
-            results.add(new SearchResult(page, totalScore));
-        }
-
-        // 2. 排序：分數由高到低
-        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return searchAndSort(pages, query, SelectionPolicy.DEFAULT);
+    }
 
-        // 3. 挑選前15 並且維基百科最多3筆 + 第一筆維基百科
-        return pickTop15WithWikiConstraint(results);
+    /**
+     * 搜尋並依指定條件挑選結果
+     * @param policy 筆數上限、維基百科上限、每個網域上限
+     */
+    public List<SearchResult> searchAndSort(List<WebPage> pages, String query, SelectionPolicy policy) {
+        return searchAndSort(pages, query, policy, getDefaultBudget(), null);
     }
 
     /**
-     * 計算(主頁 + 2個子網頁)的分數
+     * 搜尋並在時間預算內挑選結果，過程中回報暫定排名
+     *
+     * 預算用完時不再等待：子網頁已算完的頁面用總分，其餘只用標題分數 (結果標記為 partial)。
+     * @param budget 計分可用的時間 (超過伺服器設定的查詢時限時以時限為準)
+     * @param listener 先收到只用標題分數的排名，之後每算完一個頁面收到一次更新的排名 (需要時才挑選)；可為 null
      */
-    private double calculateScoreWithSubPages(WebPage page, String query) {
-        double mainScore = calculateScore(page, query);
+    public List<SearchResult> searchAndSort(List<WebPage> pages, String query, SelectionPolicy policy,
+                                            Duration budget, ProgressListener listener) {
+        long budgetMillis = Math.max(0, Math.min(budget.toMillis(), queryTimeoutMillis));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        FetchContext context = new FetchContext();
+        // 與搜尋結果快取、合併請求使用同一個正規化後的查詢：鍵相同的查詢計分也相同
+        KeywordScorer scorer = KEYWORD_SCORER.withQuery(QueryNormalizer.normalize(query));
+        // 近似重複的代表頁可能被原始順序更前面的頁面取代，名單要能移除已加入的候選
+        TopKSelector<SearchResult> selector = newSelector(policy, nearDuplicateDistance >= 0);
 
-        // 抓取子網頁
-        List<String> subLinks = pickTwoSubLinks(page.getUrl());
-        double subScoreSum = 0.0;
-        for (String subUrl : subLinks) {
-            double subOneScore = calculateSubPageScore(subUrl, query);
-            subScoreSum += subOneScore;
+        // 1. 先算所有標題分數；總分上限 = 標題分數 + 兩個子網頁都拿滿分
+        int n = pages.size();
+        double[] titleScores = new double[n];
+        List<Integer> byUpperBound = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            titleScores[i] = calculateScore(pages.get(i), scorer);
+            byUpperBound.add(i);
+        }
+        double maxSubScore = scorer.maxScore() * 2 * SUB_PAGE_RATIO;
+        byUpperBound.sort((a, b) -> Double.compare(titleScores[b], titleScores[a]));
+        Progress progress = listener != null ? new Progress(pages, titleScores, policy, listener) : null;
+        NearDuplicates duplicates = nearDuplicateDistance < 0 ? null : new NearDuplicates(nearDuplicateDistance,
+                demoted -> {
+                    selector.remove(demoted);
+                    if (progress != null) {
+                        progress.removed(demoted);
+                    }
+                });
+
+        // 2. 依上限由高到低計算主頁 + 子網頁的總分，算完就放進挑選器；
+        //    剪枝模式下同時進行的頁面數有限，上限已低於目前門檻的頁面不再抓取子網頁
+        Semaphore slots = new Semaphore(pruning ? pruningParallelism : Math.max(1, n));
+        List<CompletableFuture<SearchResult>> results = new ArrayList<>(Collections.nCopies(n, null));
+        List<CompletableFuture<Void>> offered = new ArrayList<>(Collections.nCopies(n, null));
+        boolean expired = false;
+        int pruned = 0;
+        for (int i : byUpperBound) {
+            WebPage page = pages.get(i);
+            double titleScore = titleScores[i];
+            long order = i;
+            CompletableFuture<Double> score;
+            if (!expired && !acquireBefore(slots, deadline)) {
+                expired = true;
+            }
+            double upperBound = titleScore + maxSubScore;
+            if (expired) {
+                score = new CompletableFuture<>();
+            } else if (pruning && !selector.canBeSelected(new SearchResult(page, upperBound), upperBound)) {
+                slots.release();
+                pruned++;
+                score = CompletableFuture.completedFuture(titleScore);
+            } else {
+                score = calculateScoreWithSubPages(page, (int) order, titleScore, scorer, context, duplicates);
+                score.whenComplete((v, e) -> slots.release());
+            }
+            CompletableFuture<SearchResult> result = score
+                    .thenApply(totalScore -> new SearchResult(page, totalScore))
+                    .exceptionally(e -> new SearchResult(page, titleScore));
+            results.set(i, result);
+            offered.set(i, result.thenAccept(r -> {
+                // 近似重複的複本不列入名單
+                Runnable offer = () -> {
+                    boolean duplicate = duplicates != null && duplicates.isCopy((int) order);
+                    if (!duplicate) {
+                        selector.offer(r, r.getScore(), order);
+                    }
+                    if (progress != null) {
+                        progress.scored((int) order, r.getScore(), duplicate);
+                    }
+                };
+                if (duplicates != null) {
+                    duplicates.atomically(offer);
+                } else {
+                    offer.run();
+                }
+            }));
         }
-        double adjustedSubScore = subScoreSum * SUB_PAGE_RATIO;
-        return mainScore + adjustedSubScore;
-    }
 
-    private double calculateSubPageScore(String url, String query) {
         try {
-            String text = fetchContent(url);
-            return calcScoreFromText(text, query);
-        } catch (IOException e) {
-            return 0.0;
+            CompletableFuture.allOf(offered.toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            expired = true;
+        } catch (ExecutionException e) {
+            // 個別頁面的錯誤已在上面轉成標題分數
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            expired = true;
+        }
+
+        // 超過時間預算 => 尚未算完的頁面只用標題分數，並標記為 partial
+        int partial = 0;
+        for (int i = 0; i < n; i++) {
+            if (results.get(i).complete(new SearchResult(pages.get(i), titleScores[i], true))) {
+                partial++;
+            }
+            offered.get(i).join();
+        }
+
+        // 取消仍在進行中的抓取
+        int cancelled = context.cancelAll();
+        if (Thread.currentThread().isInterrupted()) {
+            logger.debug("Query '{}' was cancelled, cancelled {} fetches", query, cancelled);
+        } else if (expired) {
+            logger.warn("Query '{}' exceeded its {} ms budget, {} pages scored by title only, cancelled {} fetches",
+                    query, budgetMillis, partial, cancelled);
         }
+        logger.debug("Query '{}': pruned {} of {} candidates, {} near-duplicates",
+                query, pruned, n, duplicates != null ? duplicates.copyCount() : 0);
+
+        // 3. 挑選：分數由高到低，並遵守筆數、維基百科與網域上限 (近似重複的複本已不在名單中)
+        return selector.select();
     }
 
     /**
-     * 從字串中加權計算與Friends相關之分數
+     * 未指定時間預算時使用的預算 (伺服器設定的查詢時限)
      */
-    private double calcScoreFromText(String text, String query) {
-        double baseScore = 0.0;
-        String lower = text.toLowerCase();
+    public Duration getDefaultBudget() {
+        return Duration.ofMillis(queryTimeoutMillis);
+    }
 
-        // 與主頁相同關鍵字
-        if (lower.contains("friends") || lower.contains("six friends") || lower.contains("六人行")) {
-            baseScore += FRIENDS_WEIGHT;
-        }
-        if (lower.contains("rachel")) {
-            baseScore += RACHEL_WEIGHT;
-        }
-        if (lower.contains("monica")) {
-            baseScore += MONICA_WEIGHT;
-        }
-        if (lower.contains("chandler")) {
-            baseScore += CHANDLER_WEIGHT;
+    /**
+     * 搜尋過程中的暫定排名通知
+     */
+    public interface ProgressListener {
+        /**
+         * 依序呼叫 (不會同時呼叫)；不需要每次都取得名單，例如限制更新頻率時只在要送出時 get()
+         * @param ranking 依目前分數 (已算完的頁面用總分，其餘用標題分數) 挑選名單，呼叫 get() 時才挑選
+         */
+        void onProgress(Supplier<List<SearchResult>> ranking);
+    }
+
+    /**
+     * 記錄每個頁面目前的分數並通知；名單只在聆聽者取得時才挑選
+     *
+     * 所有頁面都在同一個可更新的挑選器中，頁面算完時只取代它的分數，不必每次重建。
+     */
+    private final class Progress {
+        private final List<WebPage> pages;
+        private final TopKSelector<SearchResult> selector;
+        private final ProgressListener listener;
+
+        private Progress(List<WebPage> pages, double[] titleScores, SelectionPolicy policy, ProgressListener listener) {
+            this.pages = pages;
+            this.selector = newSelector(policy, true);
+            this.listener = listener;
+            for (int i = 0; i < titleScores.length; i++) {
+                selector.offer(new SearchResult(pages.get(i), titleScores[i]), titleScores[i], i);
+            }
+            listener.onProgress(selector::select);
         }
-        if (lower.contains("joey")) {
-            baseScore += JOEY_WEIGHT;
+
+        private synchronized void scored(int index, double score, boolean duplicate) {
+            if (duplicate) {
+                selector.remove(index);
+            } else {
+                selector.offer(new SearchResult(pages.get(index), score), score, index);
+            }
+            listener.onProgress(selector::select);
         }
-        if (lower.contains("phoebe")) {
-            baseScore += PHOEBE_WEIGHT;
+
+        /** 頁面成為近似重複的複本，不再列入名單 */
+        private synchronized void removed(int index) {
+            selector.remove(index);
+            listener.onProgress(selector::select);
         }
-        if (lower.contains("ross")) {
-            baseScore += ROSS_WEIGHT;
+    }
+
+    /**
+     * 一次查詢中主頁內容的近似重複記錄 (執行緒安全)
+     *
+     * 指紋相近、且在不同主機上的主頁為一組 (轉載、鏡像；同一網站的不同文章不算)，組內共用最先掃描完的頁面的子網頁分數。
+     * 每組只保留原始順序最前面的一頁 (代表頁)，與掃描完成的先後無關；其餘為複本，不列入結果。
+     */
+    private static final class NearDuplicates {
+        private final NearDuplicateIndex<Group> index;
+        /** 代表頁被原始順序更前面的頁面取代時呼叫 (在鎖內，與 atomically 互斥) */
+        private final IntConsumer demoted;
+        private final Set<Integer> copies = new HashSet<>();
+
+        private NearDuplicates(int maxDistance, IntConsumer demoted) {
+            this.index = new NearDuplicateIndex<>(maxDistance);
+            this.demoted = demoted;
         }
-        if (lower.contains("central perk") || lower.contains("中央咖啡館")) {
-            baseScore += CENTRAL_PERK_WEIGHT;
+
+        /**
+         * 登記主頁內容；與其他主機上已登記的頁面近似重複時回傳該組的子網頁分數，否則成為新的一組並回傳 null
+         * @param subScore 這頁的子網頁分數 (成為新的一組時，由呼叫者完成)
+         */
+        private synchronized CompletableFuture<Double> claim(long fingerprint, int page, String host,
+                                                             CompletableFuture<Double> subScore) {
+            if (fingerprint == SimHash.NONE || host == null) {
+                return null;
+            }
+            Group created = new Group(subScore, page, host);
+            Group group = index.putIfAbsent(fingerprint, created, existing -> !existing.hosts.contains(host));
+            if (group == null) {
+                return null;
+            }
+            group.hosts.add(host);
+            if (page < group.representative) {
+                copies.add(group.representative);
+                demoted.accept(group.representative);
+                group.representative = page;
+            } else {
+                copies.add(page);
+            }
+            return group.subScore;
         }
-        if (lower.contains("liu renxing") || lower.contains("六人行")) {
-            baseScore += LIU_REN_XING_WEIGHT;
+
+        /** 是否為某一組中的複本 (不是代表頁) */
+        private synchronized boolean isCopy(int page) {
+            return copies.contains(page);
         }
-        if (lower.contains("eric ascieline")) {
-            baseScore += ERIC_ASCELINE_WEIGHT;
+
+        /**
+         * 與 claim 互斥地執行 (判斷是否為複本並加入名單時，代表頁不會在中途被取代)
+         */
+        private synchronized void atomically(Runnable action) {
+            action.run();
         }
-        if (lower.contains("david crane")) {
-            baseScore += DAVID_CRANE_WEIGHT;
+
+        private synchronized int copyCount() {
+            return copies.size();
         }
 
-        // 對 query 關鍵字加分
-        String[] queryKeywords = query.toLowerCase().split("\\s+");
-        for (String kw : queryKeywords) {
-            if (lower.contains(kw)) {
-                baseScore += 1.0;
+        private static final class Group {
+            private final CompletableFuture<Double> subScore;
+            private final Set<String> hosts = new HashSet<>();
+            /** 組內原始順序最前面的頁面 */
+            private int representative;
+
+            private Group(CompletableFuture<Double> subScore, int page, String host) {
+                this.subScore = subScore;
+                this.representative = page;
+                this.hosts.add(host);
             }
         }
-
-        return baseScore;
     }
 
     /**
-     * 原本計算主頁的分數
+     * 在時限內取得一個執行名額
      */
-    private double calculateScore(WebPage page, String query) {
-        return calcScoreFromText(page.getTitle(), query);
+    private boolean acquireBefore(Semaphore slots, long deadline) {
+        try {
+            return slots.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     /**
-     * 隨機擷取2條子連結
+     * 依條件建立挑選器：第一筆是維基百科、維基百科最多 N 筆、每個網域最多 N 筆；
+     * updatable 時候選可以取代、移除 (暫定名單用)
      */
-    private List<String> pickTwoSubLinks(String mainUrl) {
-        List<String> subUrls = new ArrayList<>();
-        try {
-            String content = fetchContent(mainUrl);
-            Document doc = Jsoup.parse(content);
-            Elements links = doc.select("a[href]");
-            int count = 0;
-            for (org.jsoup.nodes.Element link : links) {
-                String href = link.attr("abs:href");
-                if (href.contains("youtube.com") || href.contains("youtu.be")) {
-                    continue;
-                }
-                subUrls.add(href);
-                count++;
-                if (count >= 2) break;
-            }
-        } catch (IOException e) {
-            // ignore
+    private TopKSelector<SearchResult> newSelector(SelectionPolicy policy, boolean updatable) {
+        TopKSelector.Builder<SearchResult> builder = TopKSelector.builder(policy.getLimit());
+        if (updatable) {
+            builder.updatable();
         }
-        return subUrls;
+        if (policy.isPinWikipedia()) {
+            builder.pinFirst(this::isWikipedia);
+        }
+        builder.maxMatching(this::isWikipedia, policy.getMaxWikipedia());
+        if (policy.getMaxPerDomain() > 0) {
+            builder.maxPerGroup(this::domainOf, policy.getMaxPerDomain());
+        }
+        return builder.build();
+    }
+
+    private boolean isWikipedia(SearchResult r) {
+        return r.getWebPage().getUrl().toLowerCase().contains("wikipedia.org");
     }
 
-    private String fetchContent(String urlStr) throws IOException {
-        StringBuilder sb = new StringBuilder();
+    private String domainOf(SearchResult r) {
+        return hostOf(r.getWebPage().getUrl());
+    }
 
-        String[] userAgents = {
-            "Mozilla/5.0 (Windows NT 10.0; Win64; x64)",
-            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)",
-            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:36.0) Gecko/20100101 Firefox/36.0",
-            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:40.0) Gecko/20100101 Firefox/40.0"
-        };
-        String randomUA = userAgents[new Random().nextInt(userAgents.length)];
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-        Document doc = Jsoup.connect(urlStr)
-                .userAgent(randomUA)
-                .ignoreHttpErrors(true)
-                .ignoreContentType(true)
-                .timeout(5000)
-                .get();
+    /**
+     * 計算(主頁 + 2個子網頁)的分數
+     * 主頁只串流讀取開頭 (取得足夠的連結即停止)，從中取出子連結；2個子網頁同時抓取，抓取皆為非同步，不會佔住執行緒等待
+     * 標題分數高的候選網頁 (與其子網頁) 優先送出請求
+     *
+     * 主頁內容與這次查詢中其他網站上已在計算的另一頁近似重複 (轉載、鏡像) 時，不抓子網頁，直接沿用該頁的子網頁分數
+     * @param duplicates 這次查詢的近似重複記錄；null 表示不檢查
+     */
+    private CompletableFuture<Double> calculateScoreWithSubPages(WebPage page, int index, double mainScore,
+                                                                 KeywordScorer scorer, FetchContext context,
+                                                                 NearDuplicates duplicates) {
+        return pageProcessor.head(page.getUrl(), context, mainScore)
+                .handle((mainPage, e) -> mainPage)
+                .thenCompose(mainPage -> {
+                    CompletableFuture<Double> subScore = new CompletableFuture<>();
+                    if (mainPage != null && duplicates != null) {
+                        CompletableFuture<Double> original = duplicates.claim(mainPage.getFingerprint(), index,
+                                hostOf(page.getUrl()), subScore);
+                        if (original != null) {
+                            return original.thenApply(s -> mainScore + s);
+                        }
+                    }
+                    // 抓取子網頁
+                    List<String> subLinks = mainPage != null ? pickTwoSubLinks(mainPage) : List.of();
+                    List<CompletableFuture<Double>> subScores = new ArrayList<>();
+                    for (String subUrl : subLinks) {
+                        subScores.add(calculateSubPageScore(subUrl, scorer, context, mainScore));
+                    }
+                    CompletableFuture.allOf(subScores.toArray(new CompletableFuture<?>[0]))
+                            .thenApply(v -> {
+                                double subScoreSum = 0.0;
+                                for (CompletableFuture<Double> subOneScore : subScores) {
+                                    subScoreSum += subOneScore.join();
+                                }
+                                return subScoreSum * SUB_PAGE_RATIO;
+                            })
+                            .whenComplete((adjustedSubScore, error) -> {
+                                if (error != null) {
+                                    subScore.completeExceptionally(error);
+                                } else {
+                                    subScore.complete(adjustedSubScore);
+                                }
+                            });
+                    return subScore.thenApply(adjustedSubScore -> mainScore + adjustedSubScore);
+                });
+    }
 
-        sb.append(doc.text());
-        return sb.toString();
+    private CompletableFuture<Double> calculateSubPageScore(String url, KeywordScorer scorer, FetchContext context,
+                                                            double priority) {
+        return pageProcessor.process(url, context, priority)
+                .thenApply(subPage -> calcScoreFromText(subPage.getText(), scorer))
+                .exceptionally(e -> 0.0);
     }
 
     /**
-     * 將結果中挑前15 並且維基百科不超過3筆，第一筆是維基百科
+     * 從字串中加權計算與Friends相關之分數 (單次掃描，比對時才轉小寫，不複製全文)
      */
-    private List<SearchResult> pickTop15WithWikiConstraint(List<SearchResult> results) {
-        List<SearchResult> finalList = new ArrayList<>();
-        int wikiCount = 0;
-        int totalDesired = 15;
-        int maxWiki = 3;
-
-        // 優先選一個維基百科
-        for (int i = 0; i < results.size(); i++) {
-            SearchResult r = results.get(i);
-            String urlLower = r.getWebPage().getUrl().toLowerCase();
-            if (urlLower.contains("wikipedia.org")) {
-                finalList.add(r);
-                wikiCount++;
-                results.remove(i);
-                break;
-            }
-        }
+    private double calcScoreFromText(CharSequence text, KeywordScorer scorer) {
+        return scorer.score(text);
+    }
 
-        // 填入其他結果
-        for (SearchResult r : results) {
-            if (finalList.size() >= totalDesired) break;
-            String urlLower = r.getWebPage().getUrl().toLowerCase();
-            if (urlLower.contains("wikipedia.org")) {
-                if (wikiCount < maxWiki) {
-                    finalList.add(r);
-                    wikiCount++;
-                }
-            } else {
-                finalList.add(r);
-            }
-        }
+    /**
+     * 原本計算主頁的分數
+     */
+    private double calculateScore(WebPage page, KeywordScorer scorer) {
+        return calcScoreFromText(page.getTitle(), scorer);
+    }
 
-        // 如果未滿15，繼續塞非 wiki
-        if (finalList.size() < totalDesired) {
-            for (SearchResult r : results) {
-                if (finalList.size() >= totalDesired) break;
-                if (!finalList.contains(r)) {
-                    String urlLower = r.getWebPage().getUrl().toLowerCase();
-                    if (!urlLower.contains("wikipedia.org")) {
-                        finalList.add(r);
-                    }
-                }
+    /**
+     * 從主頁的前幾個連結擷取2條子連結
+     */
+    private List<String> pickTwoSubLinks(PageHead mainPage) {
+        List<String> subUrls = new ArrayList<>();
+        int count = 0;
+        for (String href : mainPage.getLinks()) {
+            if (href.contains("youtube.com") || href.contains("youtu.be")) {
+                continue;
             }
+            subUrls.add(href);
+            count++;
+            if (count >= 2) break;
         }
-
-        return finalList;
+        return subUrls;
     }
 }
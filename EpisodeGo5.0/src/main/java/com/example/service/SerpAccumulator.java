@@ -0,0 +1,40 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多個 Google 結果頁同時解析時的收集器 (執行緒安全)
+ * 每一頁各自一格，最後依頁碼順序合併，保留 Google 原本的排名順序
+ */
+class SerpAccumulator {
+
+    private final List<Map<String, String>> pages;
+
+    SerpAccumulator(int pageCount) {
+        pages = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            pages.add(new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * 加入第 pageIndex 頁解析出的一筆結果 (標題, URL)
+     */
+    synchronized void add(int pageIndex, String title, String url) {
+        pages.get(pageIndex).put(title, url);
+    }
+
+    /**
+     * 依排名順序合併所有頁面，重複標題以後面頁面的 URL 為準 (與逐頁放入時相同)
+     */
+    synchronized Map<String, String> toRankedMap() {
+        Map<String, String> merged = new LinkedHashMap<>();
+        for (Map<String, String> page : pages) {
+            merged.putAll(page);
+        }
+        return merged;
+    }
+}
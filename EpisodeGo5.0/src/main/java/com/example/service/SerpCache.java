@@ -0,0 +1,53 @@
+package com.example.service;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Google 搜尋結果快取 (鍵為正規化後的查詢字串)
+ *
+ * 使用 Caffeine：容量有上限、依寫入時間過期，並以 W-TinyLFU 依使用頻率決定保留哪些查詢，
+ * 熱門查詢 (例如 Rachel、Central Perk) 不會被一次性的查詢擠掉。
+ * 命中、未命中與淘汰次數透過 actuator 的 cache.* 指標公開 (cache=serp)。
+ */
+@Component
+public class SerpCache {
+
+    private final Cache<String, Map<String, String>> cache;
+
+    public SerpCache(MeterRegistry meterRegistry,
+                     @Value("${episodego.serp-cache.max-size:1000}") long maxSize,
+                     @Value("${episodego.serp-cache.ttl:10m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "serp");
+    }
+
+    /**
+     * 取得快取的結果，沒有則回傳 null
+     */
+    public Map<String, String> get(String normalizedQuery) {
+        return cache.getIfPresent(normalizedQuery);
+    }
+
+    public void put(String normalizedQuery, Map<String, String> results) {
+        cache.put(normalizedQuery, results);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.service;
+
+/**
+ * 64 位元 SimHash 文字指紋：內容相近的網頁 (轉載、鏡像站) 指紋的漢明距離很小
+ *
+ * 特徵為連續三個詞的組合 (英數字以單字為詞，中日韓文字每個字一個詞)，出現越多次權重越大。
+ * 詞太少的文字無法可靠地比對，回傳 NONE。
+ */
+public final class SimHash {
+
+    /** 文字太短，沒有指紋 */
+    public static final long NONE = 0L;
+
+    private static final int SHINGLE = 3;
+    private static final int MIN_TOKENS = 20;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SimHash() {
+    }
+
+    /**
+     * 計算文字的指紋 (單次掃描，不複製全文)
+     */
+    public static long of(CharSequence text) {
+        int[] weights = new int[64];
+        long[] window = new long[SHINGLE];
+        int tokens = 0;
+        long token = FNV_OFFSET;
+        boolean inWord = false;
+
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            char c = i < n ? Character.toLowerCase(text.charAt(i)) : ' ';
+            if (c < 0x80 ? Character.isLetterOrDigit(c) : Character.isLetterOrDigit(c) && !isIdeographic(c)) {
+                token = (token ^ c) * FNV_PRIME;
+                inWord = true;
+                continue;
+            }
+            if (inWord) {
+                tokens = addToken(weights, window, tokens, token);
+                token = FNV_OFFSET;
+                inWord = false;
+            }
+            if (c >= 0x80 && isIdeographic(c)) {
+                tokens = addToken(weights, window, tokens, (FNV_OFFSET ^ c) * FNV_PRIME);
+            }
+        }
+        if (tokens < MIN_TOKENS) {
+            return NONE;
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint == NONE ? 1L : fingerprint;
+    }
+
+    /**
+     * 兩個指紋不同的位元數
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static int addToken(int[] weights, long[] window, int tokens, long token) {
+        window[tokens % SHINGLE] = token;
+        tokens++;
+        if (tokens >= SHINGLE) {
+            // 依出現順序組合最近的三個詞
+            long shingle = FNV_OFFSET;
+            for (int k = SHINGLE; k > 0; k--) {
+                shingle = (shingle ^ window[(tokens - k) % SHINGLE]) * FNV_PRIME;
+            }
+            shingle = mix(shingle);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((shingle >>> bit) & 1) != 0 ? 1 : -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 讓雜湊值的每個位元都與輸入的每個位元有關 (splitmix64 的最後一步)
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static boolean isIdeographic(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 合併同時進行的相同工作 (single-flight)
+ *
+ * 同一個 key 同時只會執行一次：第一個呼叫者實際執行，其餘同時到達的呼叫者共用同一個結果。
+ * 工作結束後即移除，之後的呼叫會重新執行 (結果的快取由各自的快取負責)。
+ *
+ * 每個呼叫者拿到自己的 future，可以各自設定時限或取消，不影響其他呼叫者；
+ * 所有呼叫者都放棄後才取消底層的工作。
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, Shared<V>> shared = new ConcurrentHashMap<>();
+
+    /**
+     * 非同步共用：沒有相同的工作在執行時才呼叫 work 開始一個新的，回傳此呼叫者專屬的 future
+     *
+     * 取消或讓回傳的 future 逾時只代表這個呼叫者不再等待；等待者歸零時才取消 work 回傳的 future。
+     */
+    public CompletableFuture<V> share(K key, Supplier<CompletableFuture<V>> work) {
+        return share(key, () -> null, state -> { }, state -> { }, state -> work.get());
+    }
+
+    /**
+     * 同上，並讓同一次工作的呼叫者共用一個狀態 (例如合併所有等待者的額度)
+     *
+     * 開始新的工作時以 newState 建立狀態並交給 work；每個呼叫者 (包括第一個) 加入時以 join 登記，
+     * 自己的 future 結束 (取得結果、失敗、逾時或取消) 時以 leave 移除。
+     */
+    @SuppressWarnings("unchecked")
+    public <S> CompletableFuture<V> share(K key, Supplier<S> newState, Consumer<S> join, Consumer<S> leave,
+                                          Function<S, CompletableFuture<V>> work) {
+        Shared<V> created = new Shared<>();
+        Shared<V> current = shared.compute(key, (k, existing) -> {
+            if (existing != null) {
+                existing.waiters++;
+                return existing;
+            }
+            created.waiters = 1;
+            created.state = newState.get();
+            return created;
+        });
+        S state = (S) current.state;
+        join.accept(state);
+
+        if (current == created) {
+            CompletableFuture<V> source;
+            try {
+                source = work.apply(state);
+            } catch (RuntimeException e) {
+                source = CompletableFuture.failedFuture(e);
+            }
+            created.start(source, () -> shared.remove(key, created));
+        }
+
+        CompletableFuture<V> view = current.result.thenApply(v -> v);
+        view.whenComplete((v, e) -> {
+            leave.accept(state);
+            if (e != null) {
+                release(key, current);
+            }
+        });
+        return view;
+    }
+
+    private void release(K key, Shared<V> flight) {
+        boolean[] abandoned = new boolean[1];
+        shared.computeIfPresent(key, (k, existing) -> {
+            if (existing != flight || --existing.waiters > 0) {
+                return existing;
+            }
+            abandoned[0] = true;
+            return null;
+        });
+        if (abandoned[0]) {
+            flight.cancel();
+        }
+    }
+
+    /**
+     * 目前執行中的工作數
+     */
+    public int inFlightCount() {
+        return shared.size();
+    }
+
+    /**
+     * 一個共用中的非同步工作、其等待者數與共用狀態 (waiters 只在 map 的 compute 中修改)
+     */
+    private static final class Shared<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile CompletableFuture<V> source;
+        private int waiters;
+        private Object state;
+
+        private void start(CompletableFuture<V> source, Runnable onDone) {
+            this.source = source;
+            source.whenComplete((v, e) -> {
+                // 先移除再完成，之後的呼叫者會開始新的工作，不會拿到已結束的這一個
+                onDone.run();
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(v);
+                }
+            });
+        }
+
+        private void cancel() {
+            CompletableFuture<V> s = source;
+            if (s != null) {
+                s.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 串流式前 K 名挑選器 (執行緒安全)
+ *
+ * 候選結果計分完就可以丟進來 (offer)，計分結束時 select() 直接得到最終名單。
+ * 限制以規則表示：
+ *  - pinFirst：符合條件的最高分者固定排在最前面 (例如第一筆是維基百科)
+ *  - maxPerGroup：同一組最多 N 筆 (例如每個網域最多 N 筆、維基百科最多 3 筆)
+ *
+ * 記憶體有上限：候選依「所屬的組別組合」分桶，每桶只保留最好的 min(上限, K) 筆；
+ * 組別完全相同的候選受到相同的限制，被擠出桶外的候選不可能進入最終名單，因此結果與全部排序後挑選完全相同。
+ * 同分時 order 較小者優先 (與穩定排序相同)。
+ *
+ * 以 updatable() 建立時，同一個 order 再次 offer 會取代原本的候選，也可以 remove；
+ * 這時候選可能被取代而空出位置，各桶保留全部候選 (記憶體與候選數成正比)。
+ */
+public final class TopKSelector<T> {
+
+    private final int k;
+    private final List<Predicate<T>> pins;
+    private final List<GroupRule<T>> groupRules;
+    private final boolean updatable;
+
+    private final Map<List<String>, PriorityQueue<Candidate<T>>> buckets = new HashMap<>();
+    private final List<Candidate<T>> bestPins;
+    /** updatable 時每個 order 目前的候選 */
+    private final Map<Long, Candidate<T>> byOrder = new HashMap<>();
+    /** threshold() 的結果，下一次 offer 前不變；NaN 表示需要重新計算 */
+    private double cachedThreshold = Double.NaN;
+
+    /** 分數高者在前，同分時 order 小者在前 */
+    private final Comparator<Candidate<T>> betterFirst = (a, b) -> {
+        int byScore = Double.compare(b.score, a.score);
+        return byScore != 0 ? byScore : Long.compare(a.order, b.order);
+    };
+
+    private TopKSelector(int k, List<Predicate<T>> pins, List<GroupRule<T>> groupRules, boolean updatable) {
+        this.k = k;
+        this.pins = pins;
+        this.groupRules = groupRules;
+        this.updatable = updatable;
+        this.bestPins = new ArrayList<>(Collections.nCopies(pins.size(), null));
+    }
+
+    public static <T> Builder<T> builder(int k) {
+        return new Builder<>(k);
+    }
+
+    /**
+     * 加入一筆已計分的候選
+     * @param order 原始順序，同分時較小者優先 (updatable 時也是候選的識別，相同者取代原本的候選)
+     */
+    public synchronized void offer(T item, double score, long order) {
+        Candidate<T> candidate = new Candidate<>(item, score, order, groupKeys(item));
+        cachedThreshold = Double.NaN;
+        if (updatable) {
+            discard(byOrder.put(order, candidate));
+        }
+
+        for (int p = 0; p < pins.size(); p++) {
+            if (pins.get(p).test(item)) {
+                Candidate<T> best = bestPins.get(p);
+                if (best == null || betterFirst.compare(candidate, best) < 0) {
+                    bestPins.set(p, candidate);
+                }
+            }
+        }
+
+        int capacity = k;
+        for (int r = 0; r < groupRules.size(); r++) {
+            if (candidate.groups.get(r) != null) {
+                capacity = Math.min(capacity, groupRules.get(r).max);
+            }
+        }
+        if (capacity <= 0) {
+            return;
+        }
+        PriorityQueue<Candidate<T>> bucket = buckets.computeIfAbsent(candidate.groups,
+                key -> new PriorityQueue<>(betterFirst.reversed()));
+        bucket.add(candidate);
+        if (!updatable && bucket.size() > capacity) {
+            bucket.poll();
+        }
+    }
+
+    /**
+     * 移除 order 的候選 (只適用於 updatable)
+     */
+    public synchronized void remove(long order) {
+        if (!updatable) {
+            throw new IllegalStateException("Selector is not updatable");
+        }
+        cachedThreshold = Double.NaN;
+        discard(byOrder.remove(order));
+    }
+
+    /**
+     * 把被取代或移除的候選拿掉；它若是某條 pinFirst 的最佳者，改由其餘候選中最好的遞補
+     */
+    private void discard(Candidate<T> old) {
+        if (old == null) {
+            return;
+        }
+        PriorityQueue<Candidate<T>> bucket = buckets.get(old.groups);
+        if (bucket != null) {
+            bucket.remove(old);
+        }
+        for (int p = 0; p < pins.size(); p++) {
+            if (bestPins.get(p) != old) {
+                continue;
+            }
+            Candidate<T> best = null;
+            for (Candidate<T> c : byOrder.values()) {
+                if (pins.get(p).test(c.item) && (best == null || betterFirst.compare(c, best) < 0)) {
+                    best = c;
+                }
+            }
+            bestPins.set(p, best);
+        }
+    }
+
+    /**
+     * 依目前已加入的候選挑出最終名單：先放置固定項目，再依分數高低填入，並遵守各組上限
+     */
+    public synchronized List<T> select() {
+        List<T> result = new ArrayList<>();
+        for (Candidate<T> c : selectCandidates()) {
+            result.add(c.item);
+        }
+        return result;
+    }
+
+    /**
+     * 分數上限為 upperBound 的候選是否還有機會進入最終名單 (供剪枝使用，保守判斷)
+     *
+     * 名單已滿時，新候選必須不低於名單中 (非固定項目的) 最低分才可能擠進去；
+     * 若它符合 pinFirst 條件且可能比目前的固定項目更好，也視為有機會。
+     * 之後加入的候選只會讓門檻上升，因此此時判定沒機會的候選之後也不會有機會。
+     */
+    public synchronized boolean canBeSelected(T item, double upperBound) {
+        for (int p = 0; p < pins.size(); p++) {
+            if (pins.get(p).test(item)) {
+                Candidate<T> best = bestPins.get(p);
+                if (best == null || upperBound >= best.score) {
+                    return true;
+                }
+            }
+        }
+        return upperBound >= threshold();
+    }
+
+    /**
+     * 目前名單中非固定項目的最低分；名單未滿時為負無限大
+     * 結果保留到下一次 offer，剪枝時逐一詢問候選不必每次重新挑選
+     */
+    public synchronized double threshold() {
+        if (Double.isNaN(cachedThreshold)) {
+            cachedThreshold = computeThreshold();
+        }
+        return cachedThreshold;
+    }
+
+    private double computeThreshold() {
+        List<Candidate<T>> selected = selectCandidates();
+        if (selected.size() < k) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        for (Candidate<T> c : selected) {
+            if (!bestPins.contains(c)) {
+                min = Math.min(min, c.score);
+            }
+        }
+        return min;
+    }
+
+    private List<Candidate<T>> selectCandidates() {
+        List<Candidate<T>> pool = new ArrayList<>();
+        for (PriorityQueue<Candidate<T>> bucket : buckets.values()) {
+            pool.addAll(bucket);
+        }
+        pool.sort(betterFirst);
+
+        List<Candidate<T>> selected = new ArrayList<>();
+        Set<Candidate<T>> taken = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<List<Object>, Integer> groupCounts = new HashMap<>();
+
+        for (Candidate<T> pin : bestPins) {
+            if (pin != null && !taken.contains(pin)) {
+                tryTake(pin, selected, taken, groupCounts);
+            }
+        }
+        for (Candidate<T> c : pool) {
+            if (selected.size() >= k) {
+                break;
+            }
+            if (!taken.contains(c)) {
+                tryTake(c, selected, taken, groupCounts);
+            }
+        }
+        return selected;
+    }
+
+    private void tryTake(Candidate<T> c, List<Candidate<T>> selected, Set<Candidate<T>> taken,
+                         Map<List<Object>, Integer> groupCounts) {
+        if (selected.size() >= k) {
+            return;
+        }
+        for (int r = 0; r < groupRules.size(); r++) {
+            String group = c.groups.get(r);
+            if (group != null && groupCounts.getOrDefault(List.of(r, group), 0) >= groupRules.get(r).max) {
+                return;
+            }
+        }
+        for (int r = 0; r < groupRules.size(); r++) {
+            String group = c.groups.get(r);
+            if (group != null) {
+                groupCounts.merge(List.of(r, group), 1, Integer::sum);
+            }
+        }
+        selected.add(c);
+        taken.add(c);
+    }
+
+    private List<String> groupKeys(T item) {
+        List<String> keys = new ArrayList<>(groupRules.size());
+        for (GroupRule<T> rule : groupRules) {
+            keys.add(rule.groupOf.apply(item));
+        }
+        return keys;
+    }
+
+    private static final class Candidate<T> {
+        private final T item;
+        private final double score;
+        private final long order;
+        /** 每條 maxPerGroup 規則下所屬的組別，不屬於任何組則為 null */
+        private final List<String> groups;
+
+        private Candidate(T item, double score, long order, List<String> groups) {
+            this.item = item;
+            this.score = score;
+            this.order = order;
+            this.groups = groups;
+        }
+    }
+
+    private static final class GroupRule<T> {
+        private final Function<T, String> groupOf;
+        private final int max;
+
+        private GroupRule(Function<T, String> groupOf, int max) {
+            this.groupOf = groupOf;
+            this.max = max;
+        }
+    }
+
+    public static final class Builder<T> {
+        private final int k;
+        private final List<Predicate<T>> pins = new ArrayList<>();
+        private final List<GroupRule<T>> groupRules = new ArrayList<>();
+        private boolean updatable;
+
+        private Builder(int k) {
+            this.k = k;
+        }
+
+        /**
+         * 符合條件的最高分者固定放在最前面
+         */
+        public Builder<T> pinFirst(Predicate<T> matches) {
+            pins.add(matches);
+            return this;
+        }
+
+        /**
+         * 同一組最多 max 筆；groupOf 回傳 null 表示不屬於任何組
+         */
+        public Builder<T> maxPerGroup(Function<T, String> groupOf, int max) {
+            groupRules.add(new GroupRule<>(groupOf, max));
+            return this;
+        }
+
+        /**
+         * 符合條件的最多 max 筆
+         */
+        public Builder<T> maxMatching(Predicate<T> matches, int max) {
+            return maxPerGroup(item -> matches.test(item) ? "" : null, max);
+        }
+
+        /**
+         * 允許以相同 order 取代候選或移除候選 (例如分數會一再更新的暫定名單)
+         */
+        public Builder<T> updatable() {
+            this.updatable = true;
+            return this;
+        }
+
+        public TopKSelector<T> build() {
+            return new TopKSelector<>(k, new ArrayList<>(pins), new ArrayList<>(groupRules), updatable);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.service;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 網址正規化：指向同一份內容的網址得到相同的鍵，用於去除重複的搜尋結果與快取的鍵
+ *
+ *  - 不分 http / https，主機轉小寫，去掉預設埠號與「www.」；已知的鏡像網站去掉行動版主機 (m.、mobile.)
+ *  - 路徑中不必編碼的字元解碼 (%41 → A)，其餘編碼統一為大寫 (%e7 → %E7)，非 ASCII 字元編碼
+ *  - 去掉結尾的「/」、# 之後的片段與追蹤參數 (utm_*、gclid、fbclid 等；Google 的 sa、ei 等只在 Google 主機上)，
+ *    其餘參數依名稱排序
+ *
+ * 鍵只用來比對，不是可以直接連線的網址。
+ */
+public final class UrlCanonicalizer {
+
+    /** 二次編碼的「%」(%25 後面接兩個十六進位字元) */
+    private static final Pattern DOUBLE_ENCODED = Pattern.compile("%25(?=[0-9A-Fa-f]{2})");
+
+    private static final Set<String> TRACKING_PARAMS = Set.of(
+            "gclid", "dclid", "fbclid", "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_ga");
+
+    /** Google 轉址 / 搜尋頁的追蹤參數 (名稱很普通，其他網站可能是真正的內容參數) */
+    private static final Set<String> GOOGLE_PARAMS = Set.of("ved", "usg", "sa", "ei");
+
+    /** 行動版主機前綴 */
+    private static final List<String> MOBILE_LABELS = List.of("m", "mobile");
+
+    /** 行動版與桌面版內容相同的網站 (例如 en.m.wikipedia.org)；其他網站的 m. 可能是不相關的網站 */
+    private static final Set<String> MOBILE_MIRROR_DOMAINS = Set.of(
+            "wikipedia.org", "wiktionary.org", "wikiquote.org", "wikibooks.org", "wikisource.org",
+            "wikimedia.org", "imdb.com", "facebook.com", "twitter.com");
+
+    private UrlCanonicalizer() {
+    }
+
+    /**
+     * 把二次編碼的「%25XX」還原成「%XX」
+     */
+    public static String fixDoubleEncoding(String url) {
+        return url.contains("%25") ? DOUBLE_ENCODED.matcher(url).replaceAll("%") : url;
+    }
+
+    /**
+     * 網址的正規化鍵；不是合法的 http/https 網址時回傳 null
+     */
+    public static String canonicalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme();
+        String host = uri.getHost();
+        if (scheme == null || host == null
+                || !(scheme.equalsIgnoreCase("http") || scheme.equalsIgnoreCase("https"))) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(url.length());
+        String canonicalHost = canonicalHost(host);
+        key.append(canonicalHost);
+        int port = uri.getPort();
+        if (port != -1 && port != 80 && port != 443) {
+            key.append(':').append(port);
+        }
+
+        String path = normalizeEscapes(uri.getRawPath());
+        while (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        key.append(path.isEmpty() ? "/" : path);
+
+        String query = canonicalQuery(uri.getRawQuery(), isGoogle(canonicalHost));
+        if (!query.isEmpty()) {
+            key.append('?').append(query);
+        }
+        return key.toString();
+    }
+
+    private static String canonicalHost(String host) {
+        String h = host.toLowerCase(Locale.ROOT);
+        if (h.endsWith(".")) {
+            h = h.substring(0, h.length() - 1);
+        }
+        if (h.startsWith("www.")) {
+            h = h.substring(4);
+        }
+        // en.m.wikipedia.org → en.wikipedia.org、m.imdb.com → imdb.com (m.example.com 不變)
+        String[] labels = h.split("\\.");
+        if (labels.length > 2) {
+            StringBuilder sb = new StringBuilder(h.length());
+            for (int i = 0; i < labels.length; i++) {
+                if (i < labels.length - 2 && MOBILE_LABELS.contains(labels[i])) {
+                    continue;
+                }
+                if (sb.length() > 0) {
+                    sb.append('.');
+                }
+                sb.append(labels[i]);
+            }
+            String desktop = sb.toString();
+            if (isMobileMirror(desktop)) {
+                h = desktop;
+            }
+        }
+        return h;
+    }
+
+    private static boolean isMobileMirror(String host) {
+        for (String domain : MOBILE_MIRROR_DOMAINS) {
+            if (host.equals(domain) || host.endsWith("." + domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Google 的主機 (google.com、google.com.tw 等，已去掉「www.」)
+     */
+    private static boolean isGoogle(String host) {
+        return host.startsWith("google.");
+    }
+
+    /**
+     * 去掉追蹤參數後依名稱排序 (同名參數保持原本順序)
+     * @param google 是否為 Google 的網址 (一併去掉 Google 的追蹤參數)
+     */
+    private static String canonicalQuery(String rawQuery, boolean google) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return "";
+        }
+        List<String> params = new ArrayList<>();
+        for (String param : rawQuery.split("&")) {
+            if (param.isEmpty()) {
+                continue;
+            }
+            int eq = param.indexOf('=');
+            String name = (eq >= 0 ? param.substring(0, eq) : param).toLowerCase(Locale.ROOT);
+            if (name.startsWith("utm_") || TRACKING_PARAMS.contains(name)
+                    || (google && GOOGLE_PARAMS.contains(name))) {
+                continue;
+            }
+            params.add(normalizeEscapes(param));
+        }
+        Collections.sort(params, (a, b) -> nameOf(a).compareTo(nameOf(b)));
+        return String.join("&", params);
+    }
+
+    private static String nameOf(String param) {
+        int eq = param.indexOf('=');
+        return eq >= 0 ? param.substring(0, eq) : param;
+    }
+
+    /**
+     * 解碼不必編碼的字元 (英數字與 -._~)，其餘的編碼改成大寫；非 ASCII 字元以 UTF-8 編碼
+     */
+    private static String normalizeEscapes(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '%' && i + 2 < raw.length() && isHex(raw.charAt(i + 1)) && isHex(raw.charAt(i + 2))) {
+                int value = Character.digit(raw.charAt(i + 1), 16) * 16 + Character.digit(raw.charAt(i + 2), 16);
+                if (isUnreserved((char) value)) {
+                    sb.append((char) value);
+                } else {
+                    sb.append('%').append(Character.toUpperCase(raw.charAt(i + 1)))
+                            .append(Character.toUpperCase(raw.charAt(i + 2)));
+                }
+                i += 2;
+            } else if (c > 0x7f) {
+                int codePoint = raw.codePointAt(i);
+                for (byte b : new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8)) {
+                    sb.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+                            .append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+                }
+                i += Character.charCount(codePoint) - 1;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+}
@@ -0,0 +1,640 @@
+package com.example.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 持久化的網頁儲存區：重新啟動後仍保有已抓取的網頁與搜尋結果
+ *
+ * 格式：
+ *  - 分段的附加寫入檔 (segment-00000001.log)，以記憶體映射讀寫。每筆記錄 =
+ *    [magic][key 長度][value 長度][寫入時間][CRC32][key][value]，檔案其餘部分為 0。
+ *  - 索引檔 (index.dat)：key -> 位置 的快照，加上快照當下的寫入位置 (checkpoint)。
+ *    啟動時載入到記憶體中的雜湊表，查詢為 O(1)。
+ *
+ * 當機復原：載入索引後，從 checkpoint 往後重新掃描記錄並驗證 CRC，遇到不完整的記錄即停止，
+ * 之後的區域清為 0 再繼續寫入。索引損毀或不存在時，掃描所有分段重建。
+ * 背景壓縮：先移除超過保存期限 (retain) 的記錄，再把有效資料比例過低的舊分段中仍有效的記錄
+ * 搬到目前分段後刪除；分段合計超過容量上限時，最舊的分段整個丟棄 (其中的記錄視為過期)。
+ * 寫回磁碟 (force) 在鎖外進行，不會擋住同時間的寫入。
+ * get() 回傳的是映射內容的 view，呼叫端可能仍持有，因此舊分段不主動解除映射；
+ * 映射未釋放前無法刪除的檔案 (Windows) 留待之後的壓縮重試。
+ */
+@Component
+public class PageStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageStore.class);
+
+    private static final int RECORD_MAGIC = 0x45474f31; // "EGO1"
+    private static final int INDEX_MAGIC = 0x45474f49;  // "EGOI"
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{8})\\.log");
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final Duration compactionInterval;
+    private final Duration flushInterval;
+    private final double minLiveRatio;
+    private final long maxSize;
+    /** key 前綴 -> 保存期限；沒有對應前綴的記錄不會過期 */
+    private final Map<String, Duration> retention = new ConcurrentHashMap<>();
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    /** 目前寫入的分段；只在持有 this 的鎖時讀寫 */
+    private Segment active;
+    /** 已壓縮、但檔案還刪不掉的舊分段 */
+    private final List<Path> retired = new ArrayList<>();
+    /** 讓 flush 一次只有一個在進行 (不與寫入共用鎖) */
+    private final Object flushLock = new Object();
+    /** 上次索引快照的 checkpoint 所在分段；之後寫過的分段在下次快照前都要寫回磁碟 */
+    private int flushedSegmentId;
+    private ScheduledExecutorService maintenance;
+
+    public PageStore(@Value("${episodego.page-store.enabled:true}") boolean enabled,
+                     @Value("${episodego.page-store.dir:data/page-store}") String directory,
+                     @Value("${episodego.page-store.segment-size:64MB}") DataSize segmentSize,
+                     @Value("${episodego.page-store.compaction-interval:5m}") Duration compactionInterval,
+                     @Value("${episodego.page-store.flush-interval:10s}") Duration flushInterval,
+                     @Value("${episodego.page-store.min-live-ratio:0.5}") double minLiveRatio,
+                     @Value("${episodego.page-store.max-size:2GB}") DataSize maxSize) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentSize = (int) Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+        this.compactionInterval = compactionInterval;
+        this.flushInterval = flushInterval;
+        this.minLiveRatio = minLiveRatio;
+        this.maxSize = maxSize.toBytes();
+    }
+
+    /**
+     * 設定 key 以 prefix 開頭的記錄保存多久；超過的記錄在下次壓縮時移除
+     */
+    public void retain(String prefix, Duration maxAge) {
+        retention.put(prefix, maxAge);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        recover();
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread t = new Thread(runnable, "page-store-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        maintenance.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compactQuietly,
+                compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Page store opened at {} with {} entries in {} segments", directory, index.size(), segments.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (maintenance == null) {
+            return;
+        }
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    /**
+     * 讀取未超過 maxAge 的值 (唯讀、直接指向映射的檔案內容)，沒有則回傳 null
+     */
+    public ByteBuffer get(String key, Duration maxAge) {
+        if (!enabled) {
+            return null;
+        }
+        Location location = index.get(key);
+        if (location == null || isExpired(location, maxAge)) {
+            return null;
+        }
+        Segment segment = segments.get(location.segmentId);
+        if (segment == null) {
+            return null;
+        }
+        ByteBuffer view = segment.buffer.duplicate();
+        int valueStart = location.offset + HEADER_SIZE + location.keyLength;
+        view.limit(valueStart + location.valueLength).position(valueStart);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 寫入 (覆蓋同一個 key 的舊值)；過大的值不儲存
+     */
+    public void put(String key, byte[] value) {
+        if (!enabled) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (HEADER_SIZE + keyBytes.length + value.length > segmentSize) {
+            return;
+        }
+        try {
+            append(key, keyBytes, value, System.currentTimeMillis(), null);
+        } catch (IOException e) {
+            logger.warn("Failed to write page store entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    private boolean isExpired(Location location, Duration maxAge) {
+        return System.currentTimeMillis() - location.writtenAt > maxAge.toMillis();
+    }
+
+    /**
+     * 附加一筆記錄並更新索引；expected 不為 null 時 (壓縮搬移)，只有索引仍指向 expected 才更新
+     * 寫滿的分段在換上新分段、釋放鎖之後才寫回磁碟
+     */
+    private void append(String key, byte[] keyBytes, byte[] value, long writtenAt,
+                        Location expected) throws IOException {
+        Segment sealed = write(key, keyBytes, value, writtenAt, expected);
+        if (sealed != null) {
+            sealed.buffer.force();
+        }
+    }
+
+    /**
+     * 在鎖內寫入記錄，回傳因此換下的分段 (沒有換則為 null)
+     */
+    private synchronized Segment write(String key, byte[] keyBytes, byte[] value, long writtenAt,
+                                      Location expected) throws IOException {
+        int recordSize = HEADER_SIZE + keyBytes.length + value.length;
+        Segment sealed = null;
+        if (active.writePosition + recordSize > segmentSize) {
+            sealed = active;
+            active = createSegment(active.id + 1);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(value);
+
+        int offset = active.writePosition;
+        ByteBuffer out = active.buffer.duplicate();
+        out.position(offset);
+        out.putInt(0); // magic 最後寫入，避免讀到寫一半的記錄
+        out.putInt(keyBytes.length);
+        out.putInt(value.length);
+        out.putLong(writtenAt);
+        out.putInt((int) crc.getValue());
+        out.put(keyBytes);
+        out.put(value);
+        active.buffer.putInt(offset, RECORD_MAGIC);
+        active.writePosition = offset + recordSize;
+
+        Location location = new Location(active.id, offset, keyBytes.length, value.length, writtenAt);
+        if (expected == null) {
+            track(key, location);
+        } else if (index.replace(key, expected, location)) {
+            active.liveBytes.addAndGet(location.size());
+            release(expected);
+        }
+        return sealed;
+    }
+
+    private void track(String key, Location location) {
+        segments.get(location.segmentId).liveBytes.addAndGet(location.size());
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    private void release(Location location) {
+        Segment segment = segments.get(location.segmentId);
+        if (segment != null) {
+            segment.liveBytes.addAndGet(-location.size());
+        }
+    }
+
+    // ---- 復原 ----
+
+    private void recover() throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (var stream = Files.list(directory)) {
+            stream.forEach(path -> {
+                Matcher m = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (m.matches()) {
+                    files.put(Integer.parseInt(m.group(1)), path);
+                }
+            });
+        }
+        for (Map.Entry<Integer, Path> e : files.entrySet()) {
+            segments.put(e.getKey(), mapSegment(e.getKey(), e.getValue()));
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(1);
+            return;
+        }
+
+        Checkpoint checkpoint = loadIndex();
+        int lastId = files.lastKey();
+        for (int id : files.keySet()) {
+            if (checkpoint != null && id < checkpoint.segmentId) {
+                continue;
+            }
+            int from = checkpoint != null && id == checkpoint.segmentId ? checkpoint.position : 0;
+            Segment segment = segments.get(id);
+            segment.writePosition = scan(segment, from);
+        }
+        active = segments.get(lastId);
+
+        // 清掉不完整的尾端，避免之後覆寫時殘留的舊資料被誤認為記錄
+        ByteBuffer tail = active.buffer.duplicate();
+        tail.position(active.writePosition);
+        while (tail.remaining() >= 8) {
+            tail.putLong(0L);
+        }
+        while (tail.hasRemaining()) {
+            tail.put((byte) 0);
+        }
+        active.buffer.force();
+    }
+
+    /**
+     * 從 from 開始掃描記錄並加入索引，回傳最後一筆完整記錄之後的位置
+     */
+    private int scan(Segment segment, int from) {
+        ByteBuffer in = segment.buffer.duplicate();
+        int position = from;
+        while (position + HEADER_SIZE <= segmentSize) {
+            in.position(position);
+            if (in.getInt() != RECORD_MAGIC) {
+                break;
+            }
+            int keyLength = in.getInt();
+            int valueLength = in.getInt();
+            long writtenAt = in.getLong();
+            int crc = in.getInt();
+            if (keyLength < 0 || valueLength < 0
+                    || (long) position + HEADER_SIZE + keyLength + valueLength > segmentSize) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            in.get(keyBytes);
+            ByteBuffer value = in.slice();
+            value.limit(valueLength);
+            CRC32 actual = new CRC32();
+            actual.update(keyBytes);
+            actual.update(value);
+            if ((int) actual.getValue() != crc) {
+                logger.warn("Page store segment {} has a torn record at {}, truncating", segment.id, position);
+                break;
+            }
+            track(new String(keyBytes, StandardCharsets.UTF_8),
+                    new Location(segment.id, position, keyLength, valueLength, writtenAt));
+            position += HEADER_SIZE + keyLength + valueLength;
+        }
+        return position;
+    }
+
+    private Checkpoint loadIndex() {
+        Path file = directory.resolve("index.dat");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Map<String, Location> loaded = new HashMap<>();
+        Checkpoint checkpoint;
+        try (InputStream raw = Files.newInputStream(file)) {
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(raw), crc));
+            if (in.readInt() != INDEX_MAGIC) {
+                return null;
+            }
+            checkpoint = new Checkpoint(in.readInt(), in.readInt());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = StoreCodec.readString(in);
+                loaded.put(key, new Location(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readLong()));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                logger.warn("Page store index checksum mismatch, rebuilding from segments");
+                return null;
+            }
+        } catch (IOException e) {
+            logger.warn("Page store index is unreadable, rebuilding from segments: {}", e.getMessage());
+            return null;
+        }
+        if (!segments.containsKey(checkpoint.segmentId)) {
+            return null;
+        }
+        for (Map.Entry<String, Location> e : loaded.entrySet()) {
+            Location location = e.getValue();
+            Segment segment = segments.get(location.segmentId);
+            if (segment != null && location.offset + location.size() <= segmentSize) {
+                track(e.getKey(), location);
+            }
+        }
+        return checkpoint;
+    }
+
+    // ---- 背景工作 ----
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to flush page store: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 把映射的內容寫回磁碟，並寫出新的索引快照 (先寫暫存檔再原子性地取代)
+     */
+    public void flush() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        synchronized (flushLock) {
+            Checkpoint checkpoint;
+            List<Map.Entry<String, Location>> entries;
+            List<Segment> written = new ArrayList<>();
+            synchronized (this) {
+                checkpoint = new Checkpoint(active.id, active.writePosition);
+                entries = new ArrayList<>(index.entrySet());
+                for (Segment segment : segments.values()) {
+                    if (segment.id >= flushedSegmentId) {
+                        written.add(segment);
+                    }
+                }
+            }
+            // 索引指向的記錄都要先寫回磁碟；force 在鎖外進行，寫入不必等待
+            for (Segment segment : written) {
+                segment.buffer.force();
+            }
+            writeIndex(checkpoint, entries);
+            flushedSegmentId = checkpoint.segmentId;
+        }
+    }
+
+    private void writeIndex(Checkpoint checkpoint, List<Map.Entry<String, Location>> entries) throws IOException {
+        Path tmp = directory.resolve("index.tmp");
+        try (OutputStream raw = Files.newOutputStream(tmp)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw), crc));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(checkpoint.segmentId);
+            out.writeInt(checkpoint.position);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Location> e : entries) {
+                Location l = e.getValue();
+                StoreCodec.writeString(out, e.getKey());
+                out.writeInt(l.segmentId);
+                out.writeInt(l.offset);
+                out.writeInt(l.keyLength);
+                out.writeInt(l.valueLength);
+                out.writeLong(l.writtenAt);
+            }
+            out.flush();
+            long value = crc.getValue();
+            out.writeLong(value);
+            out.flush();
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve("index.dat"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Page store compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 壓縮：移除過期的記錄；分段合計超過容量上限時丟棄最舊的分段；
+     * 有效資料比例低於門檻的舊分段，把仍有效的記錄搬到目前分段後刪除
+     */
+    public void compact() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        deleteRetired();
+        expire();
+
+        // 在鎖內挑選，避免把剛換上的新分段當成舊分段；之後 active 只會往後換，不會變成這些分段
+        List<Segment> dropped = new ArrayList<>();
+        List<Segment> victims = new ArrayList<>();
+        synchronized (this) {
+            List<Segment> sealed = new ArrayList<>(segments.values());
+            sealed.remove(active);
+            sealed.sort((a, b) -> Integer.compare(a.id, b.id));
+            long total = (long) segments.size() * segmentSize;
+            for (Segment segment : sealed) {
+                if (total > maxSize) {
+                    dropped.add(segment);
+                    total -= segmentSize;
+                } else if (segment.liveBytes.get() < segmentSize * minLiveRatio) {
+                    victims.add(segment);
+                }
+            }
+        }
+        if (dropped.isEmpty() && victims.isEmpty()) {
+            return;
+        }
+
+        for (Segment segment : dropped) {
+            index.values().removeIf(l -> l.segmentId == segment.id);
+        }
+        for (Segment victim : victims) {
+            for (Map.Entry<String, Location> e : index.entrySet()) {
+                Location location = e.getValue();
+                if (location.segmentId != victim.id) {
+                    continue;
+                }
+                ByteBuffer view = victim.buffer.duplicate();
+                view.position(location.offset + HEADER_SIZE);
+                byte[] keyBytes = new byte[location.keyLength];
+                byte[] value = new byte[location.valueLength];
+                view.get(keyBytes);
+                view.get(value);
+                append(e.getKey(), keyBytes, value, location.writtenAt, location);
+            }
+        }
+
+        // 先寫出不再指向舊分段的索引，再刪除舊分段
+        flush();
+        List<Segment> removed = new ArrayList<>(dropped);
+        removed.addAll(victims);
+        for (Segment segment : removed) {
+            synchronized (this) {
+                index.values().removeIf(l -> l.segmentId == segment.id);
+                segments.remove(segment.id);
+            }
+            segment.channel.close();
+            synchronized (retired) {
+                retired.add(segment.path);
+            }
+        }
+        if (!dropped.isEmpty()) {
+            logger.info("Dropped {} oldest page store segments over the {} byte limit", dropped.size(), maxSize);
+        }
+        for (Segment victim : victims) {
+            logger.info("Compacted page store segment {}", victim.id);
+        }
+        deleteRetired();
+    }
+
+    /**
+     * 從索引移除超過保存期限的記錄，所在分段的有效資料隨之減少
+     */
+    private void expire() {
+        if (retention.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, Location> e : index.entrySet()) {
+            Duration maxAge = retentionOf(e.getKey());
+            Location location = e.getValue();
+            if (maxAge != null && isExpired(location, maxAge) && index.remove(e.getKey(), location)) {
+                release(location);
+            }
+        }
+    }
+
+    private Duration retentionOf(String key) {
+        for (Map.Entry<String, Duration> e : retention.entrySet()) {
+            if (key.startsWith(e.getKey())) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 刪除已壓縮的分段檔；映射尚未被回收而刪不掉的 (Windows) 保留到下次重試
+     */
+    private void deleteRetired() {
+        synchronized (retired) {
+            retired.removeIf(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                    return true;
+                } catch (IOException e) {
+                    logger.debug("Deferring deletion of compacted segment {}: {}", path, e.getMessage());
+                    return false;
+                }
+            });
+        }
+    }
+
+    // ---- 分段檔案 ----
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("segment-%08d.log", id));
+        Segment segment = mapSegment(id, path);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment mapSegment(int id, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(id, path, channel, buffer);
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private int writePosition;
+
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        private final int segmentId;
+        private final int offset;
+        private final int keyLength;
+        private final int valueLength;
+        private final long writtenAt;
+
+        private Location(int segmentId, int offset, int keyLength, int valueLength, long writtenAt) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+            this.writtenAt = writtenAt;
+        }
+
+        private int size() {
+            return HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    private static final class Checkpoint {
+        private final int segmentId;
+        private final int position;
+
+        private Checkpoint(int segmentId, int position) {
+            this.segmentId = segmentId;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.example.model.ParsedPage;
+
+/**
+ * 網頁與搜尋結果的壓縮二進位格式 (快取與磁碟儲存共用)
+ */
+public final class StoreCodec {
+
+    private StoreCodec() {
+    }
+
+    public static byte[] encodePage(ParsedPage page) {
+        return deflate(out -> {
+            writeString(out, page.getUrl());
+            out.writeInt(page.getStatusCode());
+            writeString(out, page.getContentType());
+            writeString(out, page.getTitle());
+            writeString(out, page.getDescription());
+            writeString(out, page.getText());
+            out.writeInt(page.getLinks().size());
+            for (String link : page.getLinks()) {
+                writeString(out, link);
+            }
+        });
+    }
+
+    public static ParsedPage decodePage(ByteBuffer compressed) {
+        try (DataInputStream in = inflate(compressed)) {
+            String url = readString(in);
+            int statusCode = in.readInt();
+            String contentType = readString(in);
+            String title = readString(in);
+            String description = readString(in);
+            String text = readString(in);
+            int linkCount = in.readInt();
+            List<String> links = new ArrayList<>(linkCount);
+            for (int i = 0; i < linkCount; i++) {
+                links.add(readString(in));
+            }
+            return new ParsedPage(url, statusCode, contentType, title, description, text,
+                    Collections.unmodifiableList(links));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Google 搜尋結果 (Map<標題, URL>，保留順序)
+     */
+    public static byte[] encodeResults(Map<String, String> results) {
+        return deflate(out -> {
+            out.writeInt(results.size());
+            for (Map.Entry<String, String> e : results.entrySet()) {
+                writeString(out, e.getKey());
+                writeString(out, e.getValue());
+            }
+        });
+    }
+
+    public static Map<String, String> decodeResults(ByteBuffer compressed) {
+        try (DataInputStream in = inflate(compressed)) {
+            int count = in.readInt();
+            Map<String, String> results = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                results.put(readString(in), readString(in));
+            }
+            return Collections.unmodifiableMap(results);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] deflate(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream inflate(ByteBuffer compressed) {
+        return new DataInputStream(new InflaterInputStream(new ByteBufferInputStream(compressed.duplicate())));
+    }
+
+    // 字串以 長度 + UTF-8 位元組 存放 (writeUTF 有 64KB 限制)，null 以 -1 表示
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 直接從 ByteBuffer (堆積外或記憶體映射) 讀取，不先複製到堆積上的陣列
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
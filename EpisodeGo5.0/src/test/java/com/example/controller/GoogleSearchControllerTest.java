@@ -0,0 +1,157 @@
+package com.example.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+
+import com.example.model.SearchResult;
+import com.example.model.WebPage;
+import com.example.service.GoogleQueryService;
+import com.example.service.SearchEngine;
+
+class GoogleSearchControllerTest {
+
+    private final GoogleQueryService googleQueryService = mock(GoogleQueryService.class);
+    private final SearchEngine searchEngine = mock(SearchEngine.class);
+    private final ExecutorService searchExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService streamExecutor = Executors.newSingleThreadExecutor();
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        GoogleSearchController controller = new GoogleSearchController();
+        ReflectionTestUtils.setField(controller, "googleQueryService", googleQueryService);
+        ReflectionTestUtils.setField(controller, "searchEngine", searchEngine);
+        ReflectionTestUtils.setField(controller, "searchExecutor", searchExecutor);
+        ReflectionTestUtils.setField(controller, "streamExecutor", streamExecutor);
+        ReflectionTestUtils.setField(controller, "asyncTimeout", Duration.ofSeconds(10));
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        Map<String, String> serp = new LinkedHashMap<>();
+        serp.put("Monica", "https://a.example/monica");
+        serp.put("Joey", "https://b.example/joey");
+        when(googleQueryService.search(anyString())).thenReturn(serp);
+        when(searchEngine.getDefaultBudget()).thenReturn(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        searchExecutor.shutdownNow();
+        streamExecutor.shutdownNow();
+    }
+
+    private static List<String> events(String body) {
+        List<String> events = new ArrayList<>();
+        Matcher m = Pattern.compile("(?m)^event:(\\S+)").matcher(body);
+        while (m.find()) {
+            events.add(m.group(1));
+        }
+        return events;
+    }
+
+    private static String awaitBody(MvcResult result) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!events(result.getResponse().getContentAsString()).contains("final")
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return result.getResponse().getContentAsString();
+    }
+
+    @Test
+    void streamSendsProvisionalUpdatesPartialAndFinalInOrder() throws Exception {
+        WebPage monica = new WebPage("https://a.example/monica", "Monica");
+        WebPage joey = new WebPage("https://b.example/joey", "Joey");
+        int[] selections = {0};
+        doAnswer(invocation -> {
+            SearchEngine.ProgressListener listener = invocation.getArgument(4);
+            listener.onProgress(() -> {
+                selections[0]++;
+                return List.of(new SearchResult(monica, 2.5), new SearchResult(joey, 2.0));
+            });
+            // 間隔內的更新不送出，也不挑選名單
+            listener.onProgress(() -> {
+                selections[0]++;
+                return List.of();
+            });
+            Thread.sleep(300);
+            listener.onProgress(() -> {
+                selections[0]++;
+                return List.of(new SearchResult(joey, 6.0), new SearchResult(monica, 2.5));
+            });
+            return List.of(new SearchResult(joey, 6.0), new SearchResult(monica, 2.5, true));
+        }).when(searchEngine).searchAndSort(anyList(), anyString(), any(), any(), any());
+
+        MvcResult result = mvc.perform(get("/api/search/stream").param("q", "friends")).andReturn();
+        String body = awaitBody(result);
+
+        assertEquals(List.of("provisional", "update", "partial", "final"), events(body));
+        assertEquals(2, selections[0]);
+    }
+
+    @Test
+    void slowSearchAnswers504WithTimeoutHeaderAndIsCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return List.of();
+        }).when(searchEngine).searchAndSort(anyList(), anyString(), any(), any(), any());
+
+        MvcResult result = mvc.perform(get("/api/search").param("q", "friends")).andReturn();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 模擬 Servlet 容器的 async-timeout 到期
+        MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isGatewayTimeout())
+                .andExpect(header().string(GoogleSearchController.SEARCH_TIMEOUT_HEADER, "true"))
+                .andExpect(content().json("{}"));
+        // 沒有其他請求在等同一個查詢，搜尋被中斷
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+}
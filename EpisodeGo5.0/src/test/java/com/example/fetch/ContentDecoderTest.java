@@ -0,0 +1,144 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 分塊解壓縮：不論內容如何被切開，結果都與原文相同
+ */
+class ContentDecoderTest {
+
+    private static final byte[] BODY = body();
+
+    @Test
+    void gzipInAnyChunkSize() throws IOException {
+        byte[] compressed = gzip(BODY, true);
+        for (int chunk : new int[] {1, 3, 10, 11, 1000, compressed.length}) {
+            assertArrayEquals(BODY, decode("gzip", compressed, chunk), "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void zlibAndRawDeflate() throws IOException {
+        for (boolean nowrap : new boolean[] {false, true}) {
+            byte[] compressed = deflate(BODY, nowrap);
+            for (int chunk : new int[] {1, 7, compressed.length}) {
+                assertArrayEquals(BODY, decode("deflate", compressed, chunk), "nowrap " + nowrap + ", chunk " + chunk);
+            }
+        }
+    }
+
+    @Test
+    void stopsWhenSinkHasEnough() throws IOException {
+        ContentDecoder decoder = ContentDecoder.forEncoding("gzip");
+        int[] received = new int[1];
+        boolean more = decoder.decode(ByteBuffer.wrap(gzip(BODY, false)), out -> {
+            received[0] += out.remaining();
+            return false;
+        });
+        decoder.end();
+        assertFalse(more);
+        assertTrue(received[0] > 0 && received[0] < BODY.length);
+    }
+
+    @Test
+    void encodingNames() throws ZipException {
+        assertNull(ContentDecoder.forEncoding(null));
+        assertNull(ContentDecoder.forEncoding(" Identity "));
+        assertTrue(ContentDecoder.forEncoding("X-GZIP") != null);
+        assertThrows(ZipException.class, () -> ContentDecoder.forEncoding("br"));
+    }
+
+    @Test
+    void corruptBodyFails() throws IOException {
+        ContentDecoder notGzip = ContentDecoder.forEncoding("gzip");
+        UncheckedIOException error = assertThrows(UncheckedIOException.class,
+                () -> notGzip.decode(ByteBuffer.wrap(BODY), out -> true));
+        assertTrue(error.getCause() instanceof ZipException);
+
+        byte[] compressed = gzip(BODY, false);
+        for (int i = 10; i < 40; i++) {
+            compressed[i] = (byte) 0xff;
+        }
+        ContentDecoder corrupt = ContentDecoder.forEncoding("gzip");
+        assertThrows(UncheckedIOException.class, () -> corrupt.decode(ByteBuffer.wrap(compressed), out -> true));
+    }
+
+    private static byte[] decode(String encoding, byte[] compressed, int chunk) throws IOException {
+        ContentDecoder decoder = ContentDecoder.forEncoding(encoding);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // 每塊使用同一個緩衝區，用完即覆寫 (與 HttpClient 一樣會被重複使用)
+        ByteBuffer reused = ByteBuffer.allocate(chunk);
+        for (int offset = 0; offset < compressed.length; offset += chunk) {
+            reused.clear();
+            reused.put(compressed, offset, Math.min(chunk, compressed.length - offset)).flip();
+            decoder.decode(reused, buffer -> {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                out.write(bytes, 0, bytes.length);
+                return true;
+            });
+            reused.put(0, (byte) 0);
+        }
+        decoder.end();
+        assertEquals(BODY.length, out.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * GZIPOutputStream 不寫檔名與註解；withName 時自行加上 (FNAME、FCOMMENT)，標頭會被切在多塊中
+     */
+    private static byte[] gzip(byte[] data, boolean withName) throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(plain)) {
+            out.write(data);
+        }
+        byte[] bytes = plain.toByteArray();
+        if (!withName) {
+            return bytes;
+        }
+        ByteArrayOutputStream named = new ByteArrayOutputStream();
+        named.write(bytes, 0, 3);
+        named.write(8 | 16);
+        named.write(bytes, 4, 6);
+        named.write("index.html\0".getBytes(StandardCharsets.ISO_8859_1));
+        named.write("comment\0".getBytes(StandardCharsets.ISO_8859_1));
+        named.write(bytes, 10, bytes.length - 10);
+        return named.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] body() {
+        StringBuilder sb = new StringBuilder();
+        Random random = new Random(1);
+        while (sb.length() < 100_000) {
+            sb.append("<p>Friends episode ").append(random.nextInt(1000)).append(" 六人行</p>\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FetchSchedulerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<FetchScheduler> schedulers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        schedulers.forEach(FetchScheduler::shutdown);
+    }
+
+    private FetchScheduler scheduler(int maxInFlight, int maxPerHost, double perHostRate) {
+        FetchScheduler scheduler = new FetchScheduler(registry, maxInFlight, maxPerHost, perHostRate);
+        schedulers.add(scheduler);
+        return scheduler;
+    }
+
+    private static URI uri(String host) {
+        return URI.create("https://" + host + "/episode");
+    }
+
+    private double queued() {
+        return registry.get("episodego.fetch.scheduler.queued").gauge().value();
+    }
+
+    /**
+     * 依取得名額的順序記錄標籤
+     */
+    private static CompletableFuture<FetchScheduler.Permit> track(CompletableFuture<FetchScheduler.Permit> future,
+                                                                  List<String> order, String label) {
+        future.thenRun(() -> order.add(label));
+        return future;
+    }
+
+    @Test
+    void waitingQueriesTakeTurnsInsteadOfFirstComeFirstServed() throws Exception {
+        FetchScheduler scheduler = scheduler(1, 6, 0);
+        FetchScheduler.Permit blocker = scheduler.acquire(uri("busy.example"), "other", 0).get();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<FetchScheduler.Permit>> big = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            big.add(track(scheduler.acquire(uri("host" + i + ".example"), "big", 0), order, "big" + i));
+        }
+        CompletableFuture<FetchScheduler.Permit> small =
+                track(scheduler.acquire(uri("host9.example"), "small", 0), order, "small");
+        assertEquals(4, queued());
+
+        scheduler.release(blocker);
+        scheduler.release(big.get(0).get(1, TimeUnit.SECONDS));
+        scheduler.release(small.get(1, TimeUnit.SECONDS));
+        scheduler.release(big.get(1).get(1, TimeUnit.SECONDS));
+        big.get(2).get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of("big1", "small", "big2", "big3"), order);
+    }
+
+    @Test
+    void higherPriorityGoesFirstWithinAQuery() throws Exception {
+        FetchScheduler scheduler = scheduler(1, 6, 0);
+        FetchScheduler.Permit blocker = scheduler.acquire(uri("busy.example"), "q", 0).get();
+
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<FetchScheduler.Permit> low = track(scheduler.acquire(uri("a.example"), "q", 1), order, "low");
+        CompletableFuture<FetchScheduler.Permit> high = track(scheduler.acquire(uri("b.example"), "q", 5), order, "high");
+
+        scheduler.release(blocker);
+        scheduler.release(high.get(1, TimeUnit.SECONDS));
+        low.get(1, TimeUnit.SECONDS);
+
+        assertEquals(List.of("high", "low"), order);
+    }
+
+    @Test
+    void perHostCapDoesNotBlockOtherHosts() throws Exception {
+        FetchScheduler scheduler = scheduler(10, 2, 0);
+        FetchScheduler.Permit first = scheduler.acquire(uri("slow.example"), "q", 0).get(1, TimeUnit.SECONDS);
+        scheduler.acquire(uri("slow.example"), "q", 0).get(1, TimeUnit.SECONDS);
+        CompletableFuture<FetchScheduler.Permit> third = scheduler.acquire(uri("slow.example"), "q", 0);
+        CompletableFuture<FetchScheduler.Permit> elsewhere = scheduler.acquire(uri("fast.example"), "q", 0);
+
+        elsewhere.get(1, TimeUnit.SECONDS);
+        assertFalse(third.isDone());
+
+        scheduler.release(first);
+        third.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void globalCapLimitsRequestsInFlight() throws Exception {
+        FetchScheduler scheduler = scheduler(2, 6, 0);
+        FetchScheduler.Permit first = scheduler.acquire(uri("a.example"), "q", 0).get(1, TimeUnit.SECONDS);
+        scheduler.acquire(uri("b.example"), "q", 0).get(1, TimeUnit.SECONDS);
+        CompletableFuture<FetchScheduler.Permit> third = scheduler.acquire(uri("c.example"), "q", 0);
+        assertFalse(third.isDone());
+
+        // 重複歸還不會多出名額
+        scheduler.release(first);
+        scheduler.release(first);
+        third.get(1, TimeUnit.SECONDS);
+        assertFalse(scheduler.acquire(uri("d.example"), "q", 0).isDone());
+    }
+
+    @Test
+    void requestsToOneHostAreSpacedByItsRate() throws Exception {
+        FetchScheduler scheduler = scheduler(10, 6, 10);
+        long start = System.nanoTime();
+        scheduler.acquire(uri("polite.example"), "q", 0).get(1, TimeUnit.SECONDS);
+        scheduler.acquire(uri("polite.example"), "q", 0).get(1, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs >= 90, "second request started after " + elapsedMs + "ms");
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueue() throws Exception {
+        FetchScheduler scheduler = scheduler(1, 6, 0);
+        FetchScheduler.Permit blocker = scheduler.acquire(uri("busy.example"), "q", 0).get();
+        CompletableFuture<FetchScheduler.Permit> gaveUp = scheduler.acquire(uri("a.example"), "q", 9);
+        CompletableFuture<FetchScheduler.Permit> next = scheduler.acquire(uri("b.example"), "q", 0);
+        assertEquals(2, queued());
+
+        gaveUp.cancel(true);
+        assertEquals(1, queued());
+        scheduler.release(blocker);
+        next.get(1, TimeUnit.SECONDS);
+        assertEquals(0, queued());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HostCircuitBreakersTest {
+
+    private static final URI PAGE = URI.create("https://flaky.example/central-perk");
+    private static final URI OTHER_PAGE = URI.create("https://flaky.example/apartment");
+    private static final URI OTHER_HOST = URI.create("https://steady.example/");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final HostCircuitBreakers breakers = new HostCircuitBreakers(registry, 3, Duration.ofMillis(100));
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            assertTrue(breakers.tryAcquire(PAGE));
+            breakers.onFailure(PAGE);
+        }
+    }
+
+    private double open() {
+        return registry.get("episodego.fetch.breaker.open").gauge().value();
+    }
+
+    private double rejected() {
+        return registry.get("episodego.fetch.breaker.rejected").counter().count();
+    }
+
+    @Test
+    void opensAfterConsecutiveFailuresForTheWholeHostOnly() {
+        fail(2);
+        assertTrue(breakers.tryAcquire(PAGE));
+        breakers.onSuccess(PAGE);
+        // 成功之後重新計算連續失敗
+        fail(2);
+        assertEquals(0, open());
+
+        fail(1);
+        assertEquals(1, open());
+        assertFalse(breakers.tryAcquire(PAGE));
+        assertFalse(breakers.tryAcquire(OTHER_PAGE));
+        assertEquals(2, rejected());
+        assertTrue(breakers.tryAcquire(OTHER_HOST));
+    }
+
+    @Test
+    void halfOpenLetsOneProbeThroughAndClosesOnSuccess() throws InterruptedException {
+        fail(3);
+        assertFalse(breakers.tryAcquire(PAGE));
+        Thread.sleep(150);
+
+        assertTrue(breakers.tryAcquire(PAGE));
+        // 試探請求尚未完成時，其他請求仍直接失敗
+        assertFalse(breakers.tryAcquire(OTHER_PAGE));
+        breakers.onSuccess(PAGE);
+
+        assertEquals(0, open());
+        assertTrue(breakers.tryAcquire(PAGE));
+        assertTrue(breakers.tryAcquire(OTHER_PAGE));
+    }
+
+    @Test
+    void failedProbeReopensForAnotherFullPeriod() throws InterruptedException {
+        fail(3);
+        Thread.sleep(150);
+        assertTrue(breakers.tryAcquire(PAGE));
+        breakers.onFailure(PAGE);
+
+        assertEquals(1, open());
+        assertFalse(breakers.tryAcquire(PAGE));
+        Thread.sleep(150);
+        assertTrue(breakers.tryAcquire(PAGE));
+    }
+
+    @Test
+    void cancelledProbeReleasesItsSlot() throws InterruptedException {
+        fail(3);
+        Thread.sleep(150);
+        assertTrue(breakers.tryAcquire(PAGE));
+        assertFalse(breakers.tryAcquire(OTHER_PAGE));
+        breakers.onIgnored(PAGE);
+
+        assertTrue(breakers.tryAcquire(OTHER_PAGE));
+        assertEquals(1, open());
+    }
+
+    @Test
+    void onlyServerErrorsAndThrottlingCountAsFailures() {
+        assertTrue(HostCircuitBreakers.isFailureStatus(503));
+        assertTrue(HostCircuitBreakers.isFailureStatus(429));
+        assertFalse(HostCircuitBreakers.isFailureStatus(404));
+        assertFalse(HostCircuitBreakers.isFailureStatus(200));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Content-Type 沒有標示編碼時，與 Jsoup 相同地從 BOM 與 <meta> 判斷
+ */
+class HtmlScanSubscriberTest {
+
+    private static final Charset BIG5 = Charset.forName("Big5");
+
+    private static String page(String meta, int padding) {
+        return "<html><head>" + meta + "<title>六人行</title></head><body><p>" + "x".repeat(padding)
+                + "</p><p>中央咖啡館 Central Perk</p><a href=\"/ross\">羅斯</a></body></html>";
+    }
+
+    private static HtmlScanner scan(byte[] content, Charset declared, int chunk) {
+        HtmlScanSubscriber subscriber = new HtmlScanSubscriber(new HtmlScanner("http://localhost/", 10, 100_000), declared, null);
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        for (int i = 0; i < content.length; i += chunk) {
+            subscriber.onNext(List.of(ByteBuffer.wrap(content, i, Math.min(chunk, content.length - i))));
+        }
+        subscriber.onComplete();
+        return subscriber.getBody().toCompletableFuture().join();
+    }
+
+    @Test
+    void metaCharsetIsUsedWhenContentTypeHasNone() {
+        for (String meta : List.of("<meta charset=\"big5\">",
+                "<meta http-equiv=\"Content-Type\" content=\"text/html; charset=Big5\">")) {
+            // 開頭暫存的大小前後都要能正確解碼
+            for (int padding : new int[] {10, 6000}) {
+                String html = page(meta, padding);
+                byte[] content = html.getBytes(BIG5);
+                String expected = Jsoup.parse(html).text();
+                for (int chunk : new int[] {1, 7, 1000, content.length}) {
+                    HtmlScanner scanner = scan(content, HtmlScanSubscriber.charsetOf("text/html"), chunk);
+                    assertEquals(expected, scanner.getText(), meta + " chunk " + chunk);
+                }
+            }
+        }
+    }
+
+    @Test
+    void contentTypeCharsetWinsOverMeta() {
+        byte[] content = page("<meta charset=\"big5\">", 10).getBytes(StandardCharsets.UTF_8);
+        HtmlScanner scanner = scan(content, HtmlScanSubscriber.charsetOf("text/html; charset=UTF-8"), 64);
+        assertTrue(scanner.getText().contains("中央咖啡館"));
+    }
+
+    @Test
+    void byteOrderMarkSelectsTheEncodingAndIsSkipped() {
+        String html = page("", 10);
+        byte[] text = html.getBytes(StandardCharsets.UTF_16LE);
+        byte[] content = new byte[text.length + 2];
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xFE;
+        System.arraycopy(text, 0, content, 2, text.length);
+        HtmlScanner scanner = scan(content, null, 33);
+        assertEquals(Jsoup.parse(html).text(), scanner.getText());
+    }
+
+    @Test
+    void unknownOrMissingCharsetIsSniffed() {
+        assertNull(HtmlScanSubscriber.charsetOf("text/html"));
+        assertNull(HtmlScanSubscriber.charsetOf("text/html; charset=no-such-charset"));
+        assertEquals(StandardCharsets.UTF_8, HtmlScanSubscriber.sniff(ByteBuffer.wrap(new byte[0])));
+    }
+}
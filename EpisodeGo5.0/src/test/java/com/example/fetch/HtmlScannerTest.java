@@ -0,0 +1,135 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import com.example.service.SimHash;
+
+/**
+ * HtmlScanner 的連結必須與 Jsoup 解析整份文件的 abs:href 相同 (只留 http/https、不含頁內錨點)，
+ * 文字與去掉導覽、頁首頁尾與側欄後的 text() 相同，不論內容如何被切開
+ */
+class HtmlScannerTest {
+
+    private static final String BASE = "http://localhost/page/index.html";
+
+    private static final String TRICKY = """
+            <!DOCTYPE html>
+            <HTML><Head><title>T &amp; Q</title><base href="/dir/sub/">
+            <script>var s = "<a href='/no'>x</a>"; if (a < b) {}</script>
+            <style>p > a { color: red }</style></head>
+            <body><!-- <a href="/commented">c</a> -->
+            <header><a href="/home">Fandom</a> Explore <nav><ul><li><a href="/wiki/Ross">Ross</a></ul></nav></header>
+            <div class=x data-y="a>b">Hello&nbsp;world &lt;3 caf&eacute;</div>
+            <p>one<b>two</b> three<br>four</p>
+            <A HREF="rel.html?a=1&amp;b=2">R</A> <a href='../up.html'>U</a> <a href=bare.html>B</a>
+            <a name=x>noref</a><a href="">empty</a><a href="#frag">F</a>
+            <ul><li>i1<li>i2</ul><table><tr><td>c1<td>c2</table>
+            <a href="http://example.com/abs">A</a><a
+             href="javascript:void(0)">J</a><a href="mailto:x@y">M</a>
+             2 < 3 and 5>4 六人行 last
+            <aside>Trending pages</aside><footer>Community content is available</footer>
+            </body></html>
+            """;
+
+    @Test
+    void matchesJsoupInAnyChunkSize() {
+        Document document = Jsoup.parse(TRICKY, BASE);
+        List<String> expectedLinks = new ArrayList<>();
+        for (Element a : document.select("a[href]")) {
+            String href = a.attr("abs:href");
+            String raw = a.attr("href").trim();
+            if (href.startsWith("http") && !raw.isEmpty() && !raw.startsWith("#")) {
+                expectedLinks.add(href);
+            }
+        }
+        document.select("nav, header, footer, aside").remove();
+        for (int chunk = 1; chunk <= TRICKY.length(); chunk = chunk * 2 + 1) {
+            HtmlScanner scanner = scan(TRICKY, chunk, 100, 100_000);
+            assertEquals(document.text(), scanner.getText(), "chunk " + chunk);
+            assertEquals(expectedLinks, scanner.resolveLinks(BASE), "chunk " + chunk);
+        }
+    }
+
+    @Test
+    void stopsOnceLinksAndTextAreEnough() {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 1000; i++) {
+            html.append("<p><a href=\"/p").append(i).append("\">link ").append(i).append("</a></p>");
+        }
+        HtmlScanner scanner = new HtmlScanner(BASE, 3, 20);
+        int fed = 0;
+        while (!scanner.isSatisfied() && fed < html.length()) {
+            int end = Math.min(html.length(), fed + 64);
+            scanner.feed(html.substring(fed, end));
+            fed = end;
+        }
+        assertTrue(scanner.isSatisfied());
+        assertTrue(fed < html.length() / 10, "read " + fed + " chars");
+        assertEquals(List.of("http://localhost/p0", "http://localhost/p1", "http://localhost/p2"),
+                scanner.resolveLinks(BASE));
+        assertEquals(20, scanner.getText().length());
+    }
+
+    @Test
+    void linksThatAreNotPagesDoNotUseUpTheQuota() {
+        String html = "<html><body><a href=\"javascript:void(0)\">J</a><a href=\"mailto:ross@example.com\">M</a>"
+                + "<a href=\"#top\">T</a><a href=\"\">E</a><a href=\"//:99999999999/\">B</a>"
+                + "<p>Rachel and Ross</p><a href=\"/wiki/Ross\">R</a><a href=\"https://example.com/monica\">M</a>"
+                + "<a href=\"/late\">L</a></body></html>";
+        HtmlScanner scanner = new HtmlScanner(BASE, 2, 0);
+        scanner.feed(html);
+        assertTrue(scanner.isSatisfied());
+        assertEquals(List.of("http://localhost/wiki/Ross", "https://example.com/monica"),
+                scanner.resolveLinks(BASE));
+    }
+
+    @Test
+    void unfinishedTagAtTheEndIsNotText() {
+        HtmlScanner scanner = scan("<p>Ross</p><a href=\"/x", 5, 10, 1000);
+        assertEquals("Ross", scanner.getText());
+        assertFalse(scanner.isSatisfied());
+    }
+
+    @Test
+    void sharedNavigationDoesNotMakeArticlesLookAlike() {
+        StringBuilder nav = new StringBuilder("<header><nav><ul>");
+        for (int i = 0; i < 200; i++) {
+            nav.append("<li><a href=\"/wiki/Episode_").append(i).append("\">The One With Episode ")
+                    .append(i).append("</a>");
+        }
+        nav.append("</ul></nav></header>");
+        String ross = "<html><body>" + nav + "<main><p>Ross Geller is a paleontologist and professor who "
+                + "works at the museum of natural history, marries three times and has a son named Ben with "
+                + "his first wife Carol and a daughter named Emma with Rachel.</p></main>"
+                + "<footer>Community content is available under CC-BY-SA</footer></body></html>";
+        String monica = "<html><body>" + nav + "<main><p>Monica Geller is a chef known for her obsessive "
+                + "cleanliness and competitive streak, who runs the kitchen at a restaurant downtown and later "
+                + "marries Chandler Bing in the seventh season finale.</p></main>"
+                + "<footer>Community content is available under CC-BY-SA</footer></body></html>";
+
+        long a = SimHash.of(scan(ross, 256, 8, 4096).getText());
+        long b = SimHash.of(scan(monica, 256, 8, 4096).getText());
+        assertNotEquals(SimHash.NONE, a);
+        assertTrue(SimHash.distance(a, b) > 10, "distance " + SimHash.distance(a, b));
+    }
+
+    private static HtmlScanner scan(String html, int chunk, int maxLinks, int maxText) {
+        HtmlScanner scanner = new HtmlScanner(BASE, maxLinks, maxText);
+        for (int i = 0; i < html.length() && !scanner.isSatisfied(); i += chunk) {
+            scanner.feed(html.substring(i, Math.min(html.length(), i + chunk)));
+        }
+        scanner.finish();
+        return scanner;
+    }
+}
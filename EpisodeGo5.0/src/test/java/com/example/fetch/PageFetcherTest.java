@@ -0,0 +1,327 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PageFetcherTest {
+
+    /** 約 300KB，分成許多區塊收到 */
+    private static final String LARGE = "<html><head><title>六人行</title></head><body>"
+            + "<p>Ross and Rachel at Central Perk 中央咖啡館</p>".repeat(6000) + "<a href=\"/end\">end</a></body></html>";
+
+    private static final byte[] PAGE = "<html><title>Central Perk</title></html>".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger slowOnceRequests = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService executor;
+    private FetchProperties properties;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/page", exchange -> respond(exchange, PAGE));
+        server.createContext("/stalled", exchange -> {
+            // 標頭與開頭很快送出，其餘內容遲遲不來
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 10_000);
+            OutputStream body = exchange.getResponseBody();
+            body.write(PAGE);
+            body.flush();
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.createContext("/slow-once", exchange -> {
+            // 第一個請求很慢，之後的請求 (對沖) 立即回應
+            if (slowOnceRequests.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(3_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            respond(exchange, PAGE);
+        });
+        server.createContext("/moved", exchange -> {
+            exchange.getResponseHeaders().set("Location", "/page");
+            exchange.sendResponseHeaders(301, -1);
+            exchange.close();
+        });
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(LARGE.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            respond(exchange, compressed.toByteArray());
+        });
+        server.createContext("/unavailable", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/html");
+            exchange.sendResponseHeaders(503, LARGE.length());
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(LARGE.getBytes(StandardCharsets.UTF_8), 0, LARGE.length());
+            } catch (IOException e) {
+                // 用戶端沒有讀取內容就關閉連線
+            }
+        });
+        server.createContext("/script.pdf", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+            exchange.sendResponseHeaders(200, PAGE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(PAGE);
+            } catch (IOException e) {
+                // 用戶端沒有讀取內容就關閉連線
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        executor = Executors.newCachedThreadPool();
+        properties = new FetchProperties();
+        properties.getHedge().setEnabled(false);
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, byte[] content) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, content.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(content);
+        }
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /** 這台主機的回應時間都在 50ms 左右，對沖在 minDelay 後發出 */
+    private PageFetcher hedgingFetcher(MeterRegistry registry) {
+        HostLatencies latencies = new HostLatencies(Duration.ofMinutes(1));
+        for (int i = 0; i < 20; i++) {
+            latencies.record(URI.create(url("/")), 50);
+        }
+        properties.getHedge().setEnabled(true);
+        properties.getHedge().setMinDelay(Duration.ofMillis(100));
+        return new PageFetcher(properties, latencies, new HostCircuitBreakers(registry, 5, Duration.ofSeconds(30)),
+                new FetchScheduler(registry, 4, 4, 100), registry, executor);
+    }
+
+    @Test
+    void slowRequestIsHedgedAndTheFasterCopyWins() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PageFetcher fetcher = hedgingFetcher(registry);
+
+        long start = System.nanoTime();
+        FetchResponse response = fetcher.fetchHedged(url("/slow-once"), new FetchContext()).get(2, TimeUnit.SECONDS);
+        assertEquals(200, response.getStatusCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(2, slowOnceRequests.get());
+        assertEquals(1.0, registry.get("episodego.fetch.hedges").tag("outcome", "fired").counter().count());
+    }
+
+    @Test
+    void hedgesStopWhenTheQueryHasNoneLeft() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PageFetcher fetcher = hedgingFetcher(registry);
+        properties.getHedge().setMaxPerQuery(1);
+        FetchContext context = new FetchContext();
+        assertTrue(context.tryAcquireHedge(1));
+
+        assertThrows(TimeoutException.class,
+                () -> fetcher.fetchHedged(url("/slow-once"), context).get(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, slowOnceRequests.get());
+        assertEquals(0.0, registry.get("episodego.fetch.hedges").tag("outcome", "fired").counter().count());
+    }
+
+    /** 同時只允許一個請求，名額沒歸還時下一個請求會一直排隊 */
+    private PageFetcher singleSlotFetcher() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        return new PageFetcher(properties, new HostLatencies(Duration.ofMinutes(1)),
+                new HostCircuitBreakers(registry, 5, Duration.ofSeconds(30)),
+                new FetchScheduler(registry, 1, 1, 100), registry, executor);
+    }
+
+    @Test
+    void stalledBodyTimesOutAndReleasesTheSchedulerPermit() throws Exception {
+        properties.setBodyTimeout(Duration.ofMillis(200));
+        PageFetcher fetcher = singleSlotFetcher();
+
+        long start = System.nanoTime();
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> fetcher.fetchAsync(url("/stalled")).get(3, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+        FetchResponse next = fetcher.fetchAsync(url("/page")).get(3, TimeUnit.SECONDS);
+        assertEquals(200, next.getStatusCode());
+    }
+
+    @Test
+    void timeoutFollowsTheHostsOwnLatencies() {
+        HostLatencies latencies = new HostLatencies(Duration.ofMinutes(1));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PageFetcher fetcher = new PageFetcher(properties, latencies,
+                new HostCircuitBreakers(registry, 5, Duration.ofSeconds(30)),
+                new FetchScheduler(registry, 1, 1, 100), registry, executor);
+        URI slow = URI.create("https://slow.example/page");
+        URI steady = URI.create("https://steady.example/page");
+        URI fast = URI.create("https://fast.example/page");
+        for (int i = 0; i < 100; i++) {
+            latencies.record(slow, 8_000);
+            latencies.record(steady, 2_000);
+            latencies.record(fast, 100);
+        }
+
+        // 樣本足夠：百分位數 × factor (分布的精確度約 1%)，限制在上下限之間
+        long steadyMillis = fetcher.timeoutFor(steady).toMillis();
+        assertTrue(steadyMillis >= 4_000 && steadyMillis <= 4_080, "timeout " + steadyMillis);
+        assertEquals(Duration.ofSeconds(10), fetcher.timeoutFor(slow));
+        assertEquals(Duration.ofSeconds(1), fetcher.timeoutFor(fast));
+        // 沒有樣本的主機使用固定的 read-timeout，不借用其他主機的分布
+        assertEquals(properties.getReadTimeout(), fetcher.timeoutFor(URI.create("https://new.example/")));
+    }
+
+    @Test
+    void compressedPageIsParsedFromTheDecodedChunks() throws Exception {
+        PageFetcher fetcher = singleSlotFetcher();
+        FetchResponse response = fetcher.fetchAsync(url("/gzip")).get(5, TimeUnit.SECONDS);
+        assertEquals(FetchResponse.Truncation.NONE, response.getTruncation());
+
+        Document expected = Jsoup.parse(LARGE, url("/gzip"));
+        Document parsed = response.parse();
+        assertEquals(expected.text(), parsed.text());
+        assertEquals(url("/end"), parsed.selectFirst("a[href]").attr("abs:href"));
+        assertEquals(LARGE, new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void redirectsAreFollowedAndTheFinalUrlIsReported() throws Exception {
+        FetchResponse response = singleSlotFetcher().fetchAsync(url("/moved")).get(5, TimeUnit.SECONDS);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(url("/page"), response.getUri().toString());
+        assertEquals("text/html; charset=UTF-8", response.getContentType());
+        assertEquals("Central Perk", response.parse().title());
+    }
+
+    @Test
+    void unusableCharsetInTheHeaderFallsBackToTheMetaTag() throws Exception {
+        byte[] big5 = "<html><head><meta charset=\"Big5\"><title>六人行</title></head></html>".getBytes("Big5");
+        for (String contentType : new String[] {"text/html; charset=x-no-such-charset", "text/html; charset=utf 8"}) {
+            FetchResponse response = new FetchResponse(URI.create(url("/page")), 200, contentType, big5);
+            assertEquals("六人行", response.parse().title());
+        }
+    }
+
+    @Test
+    void invalidUrlFailsWithIOException() {
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> singleSlotFetcher().fetchAsync("http://bad host/").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    private PageFetcher limitedFetcher(MeterRegistry registry, DataSize maxPageSize, DataSize maxQuerySize) {
+        properties.setMaxPageSize(maxPageSize);
+        properties.setMaxQuerySize(maxQuerySize);
+        return new PageFetcher(properties, new HostLatencies(Duration.ofMinutes(1)),
+                new HostCircuitBreakers(registry, 5, Duration.ofSeconds(30)),
+                new FetchScheduler(registry, 4, 4, 100), registry, executor);
+    }
+
+    private static double truncated(MeterRegistry registry, String limit) {
+        return registry.get("episodego.fetch.body.truncated").tag("limit", limit).counter().count();
+    }
+
+    @Test
+    void largePageIsCutAtThePageLimitAfterDecoding() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PageFetcher fetcher = limitedFetcher(registry, DataSize.ofKilobytes(10), DataSize.ofMegabytes(5));
+        FetchResponse response = fetcher.fetchAsync(url("/gzip")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(FetchResponse.Truncation.PAGE_LIMIT, response.getTruncation());
+        assertEquals(10 * 1024, response.getBody().length);
+        assertEquals("六人行", response.parse().title());
+        assertEquals(1, truncated(registry, "page"));
+        assertEquals(0, truncated(registry, "query"));
+    }
+
+    @Test
+    void pagesOfOneQueryShareItsBudget() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PageFetcher fetcher = limitedFetcher(registry, DataSize.ofKilobytes(10), DataSize.ofKilobytes(15));
+        FetchContext context = new FetchContext();
+
+        FetchResponse first = fetcher.fetchHedged(url("/gzip"), context).get(5, TimeUnit.SECONDS);
+        FetchResponse second = fetcher.fetchHedged(url("/gzip"), context).get(5, TimeUnit.SECONDS);
+        FetchResponse third = fetcher.fetchHedged(url("/gzip"), context).get(5, TimeUnit.SECONDS);
+
+        assertEquals(FetchResponse.Truncation.PAGE_LIMIT, first.getTruncation());
+        assertEquals(10 * 1024, first.getBody().length);
+        assertEquals(FetchResponse.Truncation.QUERY_BUDGET, second.getTruncation());
+        assertEquals(5 * 1024, second.getBody().length);
+        assertEquals(FetchResponse.Truncation.QUERY_BUDGET, third.getTruncation());
+        assertEquals(0, third.getBody().length);
+        assertEquals(2, truncated(registry, "query"));
+
+        // 其他查詢不受影響
+        FetchResponse other = fetcher.fetchHedged(url("/gzip"), new FetchContext()).get(5, TimeUnit.SECONDS);
+        assertEquals(FetchResponse.Truncation.PAGE_LIMIT, other.getTruncation());
+    }
+
+    @Test
+    void serverErrorsAndNonHtmlBodiesAreNotRead() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        PageFetcher fetcher = limitedFetcher(registry, DataSize.ofKilobytes(10), DataSize.ofKilobytes(15));
+        FetchContext context = new FetchContext();
+
+        FetchResponse unavailable = fetcher.fetchHedged(url("/unavailable"), context).get(5, TimeUnit.SECONDS);
+        assertEquals(503, unavailable.getStatusCode());
+        assertEquals(0, unavailable.getBody().length);
+        FetchResponse pdf = fetcher.fetchHedged(url("/script.pdf"), context).get(5, TimeUnit.SECONDS);
+        assertEquals(0, pdf.getBody().length);
+        assertEquals(1, registry.get("episodego.fetch.body.skipped").tag("reason", "status").counter().count());
+        assertEquals(1, registry.get("episodego.fetch.body.skipped").tag("reason", "content-type").counter().count());
+
+        // 沒有讀取的內容不計入查詢額度
+        FetchResponse page = fetcher.fetchHedged(url("/gzip"), context).get(5, TimeUnit.SECONDS);
+        assertEquals(10 * 1024, page.getBody().length);
+    }
+}
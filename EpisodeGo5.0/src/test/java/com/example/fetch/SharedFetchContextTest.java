@@ -0,0 +1,110 @@
+package com.example.fetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class SharedFetchContextTest {
+
+    @Test
+    void queuesWithTheQueryThatStartedTheDownload() {
+        FetchContext first = new FetchContext();
+        FetchContext second = new FetchContext();
+        SharedFetchContext shared = new SharedFetchContext();
+        shared.join(first);
+        shared.join(second);
+        shared.leave(first);
+        assertSame(first, shared.queueKey());
+    }
+
+    @Test
+    void hedgeIsAllowedWhileAnyWaiterHasOneLeftAndChargedToAll() {
+        FetchContext exhausted = new FetchContext();
+        assertTrue(exhausted.tryAcquireHedge(1));
+        FetchContext fresh = new FetchContext();
+
+        SharedFetchContext shared = new SharedFetchContext();
+        shared.join(exhausted);
+        assertFalse(shared.tryAcquireHedge(1));
+
+        shared.join(fresh);
+        assertTrue(shared.tryAcquireHedge(1));
+        // 兩個等待者都算用掉一個名額
+        assertFalse(fresh.tryAcquireHedge(1));
+        assertFalse(shared.tryAcquireHedge(1));
+    }
+
+    @Test
+    void bytesComeFromTheRichestWaiterAndAreChargedToEveryWaiter() {
+        FetchContext poor = new FetchContext();
+        assertEquals(90, poor.reserveBytes(90, 100));
+        FetchContext rich = new FetchContext();
+        FetchContext gone = new FetchContext();
+
+        SharedFetchContext shared = new SharedFetchContext();
+        shared.join(poor);
+        shared.join(rich);
+        shared.join(gone);
+        shared.leave(gone);
+
+        assertEquals(50, shared.reserveBytes(50, 100));
+        assertEquals(0, poor.reserveBytes(100, 100));
+        assertEquals(50, rich.reserveBytes(100, 100));
+        // 已離開的等待者不再計算
+        assertEquals(100, gone.reserveBytes(100, 100));
+        // 所有等待者的額度都用完後截斷
+        assertEquals(0, shared.reserveBytes(10, 100));
+    }
+
+    @Test
+    void cancelledWaitersLendNothing() {
+        FetchContext cancelled = new FetchContext();
+        cancelled.cancelAll();
+        SharedFetchContext shared = new SharedFetchContext();
+        shared.join(cancelled);
+        assertFalse(shared.tryAcquireHedge(4));
+        assertEquals(0, shared.reserveBytes(10, 100));
+    }
+
+    @Test
+    void cancellingAWaiterWhileTheDownloadReservesBytesDoesNotDeadlock() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                for (int i = 0; i < 2000; i++) {
+                    FetchContext caller = new FetchContext();
+                    SharedFetchContext shared = new SharedFetchContext();
+                    shared.join(caller);
+                    // 與 PageProcessor 相同：查詢的抓取被取消時離開共用下載
+                    caller.track(new CompletableFuture<>()).whenComplete((r, e) -> shared.leave(caller));
+
+                    CountDownLatch start = new CountDownLatch(1);
+                    Future<?> cancel = pool.submit(() -> {
+                        start.await();
+                        return caller.cancelAll();
+                    });
+                    Future<?> reserve = pool.submit(() -> {
+                        start.await();
+                        return shared.reserveBytes(10, 100);
+                    });
+                    start.countDown();
+                    cancel.get();
+                    reserve.get();
+                }
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.example.fetch.FetchResponse;
+import com.example.fetch.PageFetcher;
+import com.example.store.PageStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class GoogleQueryServiceTest {
+
+    private final PageFetcher fetcher = mock(PageFetcher.class);
+    private final SerpCache cache = new SerpCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+    private final PageStore store = new PageStore(false, "unused", DataSize.ofMegabytes(1), Duration.ofMinutes(5),
+            Duration.ofSeconds(10), 0.5, DataSize.ofMegabytes(1));
+    private final GoogleQueryService service = new GoogleQueryService(fetcher, cache, store, Duration.ofHours(1));
+
+    private static CompletableFuture<FetchResponse> serp(String url, String... titles) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (String title : titles) {
+            html.append("<div class=\"kCrYT\"><a href=\"/url?q=https://").append(title.toLowerCase())
+                    .append(".example/&amp;sa=U\"><div class=\"vvjwJb\">").append(title).append("</div></a></div>");
+        }
+        html.append("</body></html>");
+        return CompletableFuture.completedFuture(new FetchResponse(URI.create(url), 200, "text/html; charset=UTF-8",
+                html.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @BeforeEach
+    void stubGoogle() {
+        when(fetcher.fetchHedged(anyString(), anyMap(), any())).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            // 第二頁先回應，結果仍依頁序排列
+            return url.endsWith("start=0")
+                    ? CompletableFuture.supplyAsync(() -> serp(url, "Ross", "Rachel").join(),
+                            CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS))
+                    : serp(url, "Monica");
+        });
+    }
+
+    @Test
+    void resultsKeepGoogleOrderAcrossPages() throws Exception {
+        Map<String, String> results = service.search("ross");
+        assertEquals(List.of("Ross", "Rachel", "Monica"), List.copyOf(results.keySet()));
+        assertEquals("https://ross.example/", results.get("Ross"));
+    }
+
+    @Test
+    void equivalentQueriesAreServedFromTheCache() throws Exception {
+        Map<String, String> first = service.search("Ross  Geller");
+        Map<String, String> second = service.search("ross geller");
+        assertEquals(first, second);
+        // 兩頁只抓一次
+        verify(fetcher, times(2)).fetchHedged(anyString(), anyMap(), any());
+        assertEquals(1, cache.stats().hitCount());
+    }
+
+    @Test
+    void emptyResultsAreNotCached() throws Exception {
+        when(fetcher.fetchHedged(anyString(), anyMap(), any()))
+                .thenAnswer(invocation -> serp(invocation.getArgument(0)));
+        assertTrue(service.search("blocked").isEmpty());
+        assertTrue(service.search("blocked").isEmpty());
+        verify(fetcher, times(4)).fetchHedged(anyString(), anyMap(), any());
+    }
+
+    @Test
+    void aFailedPageCancelsTheOtherFetch() {
+        CompletableFuture<FetchResponse> hanging = new CompletableFuture<>();
+        when(fetcher.fetchHedged(anyString(), anyMap(), any())).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            return url.endsWith("start=0") ? hanging : CompletableFuture.failedFuture(new IOException("HTTP 429"));
+        });
+        IOException error = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(IOException.class, () -> service.search("ross")));
+        assertEquals("HTTP 429", error.getMessage());
+        assertTrue(hanging.isCancelled());
+    }
+
+    @Test
+    void interruptedSearchCancelsItsFetches() throws Exception {
+        List<CompletableFuture<FetchResponse>> hanging = new CopyOnWriteArrayList<>();
+        when(fetcher.fetchHedged(anyString(), anyMap(), any())).thenAnswer(invocation -> {
+            CompletableFuture<FetchResponse> never = new CompletableFuture<>();
+            hanging.add(never);
+            return never;
+        });
+        AtomicReference<Exception> error = new AtomicReference<>();
+        Thread search = new Thread(() -> {
+            try {
+                service.search("ross");
+            } catch (Exception e) {
+                error.set(e);
+            }
+        });
+        search.start();
+        while (hanging.size() < 2) {
+            Thread.sleep(10);
+        }
+        search.interrupt();
+        search.join(5000);
+
+        assertTrue(error.get() instanceof InterruptedIOException);
+        assertTrue(hanging.stream().allMatch(CompletableFuture::isCancelled));
+    }
+}
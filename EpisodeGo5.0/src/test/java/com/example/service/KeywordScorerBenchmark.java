@@ -0,0 +1,66 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * KeywordScorer 與原本逐條 contains 計分方式的效能比較 (同一份語料、同一組規則)
+ *
+ * 平常的測試不執行；需要時：
+ *   mvn test -Dtest=KeywordScorerBenchmark -Depisodego.benchmark=true
+ * 可另以 -Dbenchmark.query=... 與 -Dbenchmark.page-size=... 指定查詢與每頁字數 (也可直接在 IDE 中加上這些參數執行)。
+ * 兩種方式分數完全相同由 KeywordScorerTest 確認，這裡也先比對總分再計時。
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "episodego.benchmark", matches = "true")
+class KeywordScorerBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int PAGES = 50;
+
+    @Test
+    void automatonAgainstContainsChain() {
+        String query = System.getProperty("benchmark.query", "Ross Rachel break");
+        int pageSize = Integer.getInteger("benchmark.page-size", 300_000);
+        List<String> corpus = KeywordScorerTest.buildCorpus(new Random(42), PAGES, pageSize);
+        KeywordScorer scorer = SearchEngine.KEYWORD_SCORER.withQuery(query);
+
+        ToDoubleFunction<String> legacy = text -> KeywordScorerTest.legacyScore(text, query);
+        ToDoubleFunction<String> automaton = scorer::score;
+        ToDoubleFunction<String> counting = text -> scorer.match(text).getScore();
+        assertEquals(total(corpus, legacy), total(corpus, automaton));
+        assertEquals(total(corpus, legacy), total(corpus, counting));
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long legacyNanos = time(corpus, legacy);
+            long automatonNanos = time(corpus, automaton);
+            long countingNanos = time(corpus, counting);
+            System.out.printf("round %d (%d pages x %d chars): contains %.1f ms, automaton %.1f ms, "
+                            + "automaton+counts %.1f ms%n", round, PAGES, pageSize,
+                    legacyNanos / 1e6, automatonNanos / 1e6, countingNanos / 1e6);
+        }
+    }
+
+    private static double sink;
+
+    private static double total(List<String> corpus, ToDoubleFunction<String> score) {
+        double sum = 0;
+        for (String text : corpus) {
+            sum += score.applyAsDouble(text);
+        }
+        return sum;
+    }
+
+    private static long time(List<String> corpus, ToDoubleFunction<String> score) {
+        long start = System.nanoTime();
+        sink += total(corpus, score);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * KeywordScorer 的分數必須與原本逐條 contains 的計分方式完全相同 (兩者都使用 SearchEngine 的規則)
+ */
+class KeywordScorerTest {
+
+    private static final String[] QUERIES = {"Ross Rachel break", "六人行 第一季", "central perk", "ross"};
+
+    private static final String[] VOCABULARY = {
+        "the", "episode", "season", "friends", "rachel", "monica", "chandler", "joey", "phoebe", "ross",
+        "central", "perk", "六人行", "中央咖啡館", "david", "crane", "liu", "renxing", "eric", "ascieline",
+        "Rachel", "Monica", "NEW", "York", "apartment", "coffee", "劇集", "影集", "演員", "第一季"
+    };
+
+    /**
+     * 原本 SearchEngine.calcScoreFromText 的寫法：轉小寫後逐條 contains (規則取自 SearchEngine)
+     */
+    static double legacyScore(String text, String query) {
+        double baseScore = 0.0;
+        String lower = text.toLowerCase();
+        for (KeywordScorer.Rule rule : SearchEngine.KEYWORD_SCORER.rules()) {
+            if (rule.terms().stream().anyMatch(lower::contains)) {
+                baseScore += rule.weight();
+            }
+        }
+        for (String kw : query.toLowerCase().split("\\s+")) {
+            if (lower.contains(kw)) {
+                baseScore += 1.0;
+            }
+        }
+        return baseScore;
+    }
+
+    /**
+     * 產生測試文字：大部分是雜訊，關鍵字隨機出現在不同位置 (有些頁面完全沒有)
+     */
+    static List<String> buildCorpus(Random random, int pages, int pageSize) {
+        List<String> corpus = new ArrayList<>(pages);
+        for (int p = 0; p < pages; p++) {
+            StringBuilder sb = new StringBuilder(pageSize);
+            int vocabulary = 3 + random.nextInt(VOCABULARY.length - 3);
+            while (sb.length() < pageSize) {
+                if (random.nextInt(5000) == 0) {
+                    sb.append(VOCABULARY[random.nextInt(vocabulary)]);
+                } else {
+                    sb.append((char) ('a' + random.nextInt(26)));
+                    if (random.nextInt(6) == 0) {
+                        sb.append(' ');
+                    }
+                }
+            }
+            corpus.add(sb.toString());
+        }
+        return corpus;
+    }
+
+    @Test
+    void scoreMatchesLegacyContains() {
+        List<String> corpus = buildCorpus(new Random(42), 200, 20_000);
+        for (String query : QUERIES) {
+            KeywordScorer scorer = SearchEngine.KEYWORD_SCORER.withQuery(query);
+            for (String text : corpus) {
+                double expected = legacyScore(text, query);
+                assertEquals(expected, scorer.score(text), query);
+                assertEquals(expected, scorer.match(text).getScore(), query);
+            }
+        }
+    }
+
+    @Test
+    void handwrittenTexts() {
+        String[] texts = {
+            "", "Friends", "SIX FRIENDS at Central Perk", "六人行：中央咖啡館", "central  perk",
+            "David Crane and Eric Ascieline", "rossrachel", "KKelvin ross",
+        };
+        KeywordScorer scorer = SearchEngine.KEYWORD_SCORER.withQuery("Ross Geller");
+        for (String text : texts) {
+            assertEquals(legacyScore(text, "Ross Geller"), scorer.score(text), text);
+        }
+    }
+
+    @Test
+    void termsAcrossChunksAreMatched() {
+        KeywordScorer scorer = SearchEngine.KEYWORD_SCORER;
+        String text = "monica and chandler in central perk, 六人行";
+        for (int split = 0; split <= text.length(); split++) {
+            KeywordScorer.Match match = scorer.cursor(true)
+                    .feed(text.substring(0, split))
+                    .feed(text.substring(split).toCharArray(), 0, text.length() - split)
+                    .finish();
+            assertEquals(scorer.score(text), match.getScore());
+            assertEquals(1, match.count("central perk"));
+            assertEquals(1, match.count("六人行"));
+        }
+    }
+
+    @Test
+    void queryTermsDoNotDependOnTheDefaultLocale() {
+        Locale original = Locale.getDefault();
+        try {
+            // 土耳其語系的 "I".toLowerCase() 是無點的 ı
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            KeywordScorer scorer = KeywordScorer.builder().build().withQuery("IRIS");
+            assertEquals(1.0, scorer.score("iris"));
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+
+    @Test
+    void countsOverlappingOccurrences() {
+        KeywordScorer scorer = KeywordScorer.builder().rule(1.0, "aa").build();
+        assertEquals(3, scorer.match("aaaa").count("aa"));
+    }
+
+    @Test
+    void maxScoreIncludesQueryRules() {
+        assertEquals(24.5, SearchEngine.KEYWORD_SCORER.maxScore());
+        assertEquals(26.5, SearchEngine.KEYWORD_SCORER.withQuery("ross geller").maxScore());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * SimHash 指紋與近似重複索引
+ */
+class NearDuplicateIndexTest {
+
+    private static final String ARTICLE = "Friends is an American television sitcom created by David Crane and "
+            + "Marta Kauffman, which aired on NBC from September 22, 1994, to May 6, 2004, lasting ten seasons. "
+            + "With an ensemble cast starring Jennifer Aniston, Courteney Cox, Lisa Kudrow, Matt LeBlanc, "
+            + "Matthew Perry and David Schwimmer, the show revolves around six friends in their 20s and 30s "
+            + "who live in Manhattan, New York City. The series was produced by Bright/Kauffman/Crane Productions.";
+
+    @Test
+    void similarTextsAreClose() {
+        long original = SimHash.of(ARTICLE);
+        long mirrored = SimHash.of(ARTICLE.toUpperCase().replace(", ", " ,  ") + " Share this page.");
+        long other = SimHash.of("The Big Bang Theory is an American television sitcom created by Chuck Lorre and "
+                + "Bill Prady, which aired on CBS from September 24, 2007, to May 16, 2019, running for twelve "
+                + "seasons. The show originally centered on five characters living in Pasadena, California.");
+        assertNotEquals(SimHash.NONE, original);
+        assertTrue(SimHash.distance(original, mirrored) <= 3, "distance " + SimHash.distance(original, mirrored));
+        assertTrue(SimHash.distance(original, other) > 10, "distance " + SimHash.distance(original, other));
+    }
+
+    @Test
+    void shortTextHasNoFingerprint() {
+        assertEquals(SimHash.NONE, SimHash.of("Friends season 1"));
+        assertEquals(SimHash.NONE, SimHash.of(""));
+    }
+
+    @Test
+    void ideographsAreTokensOfTheirOwn() {
+        // 20 個中文字 = 20 個詞
+        assertNotEquals(SimHash.NONE, SimHash.of("六人行是美國全國廣播公司從一九九四年開始播出的情境喜劇"));
+    }
+
+    @Test
+    void indexFindsEveryFingerprintWithinDistance() {
+        Random random = new Random(5);
+        NearDuplicateIndex<Integer> index = new NearDuplicateIndex<>(3);
+        List<Long> stored = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long fingerprint = random.nextLong();
+            // 隨機指紋彼此的距離遠大於 3
+            assertNull(index.putIfAbsent(fingerprint, i));
+            stored.add(fingerprint);
+        }
+        for (int i = 0; i < stored.size(); i++) {
+            long near = flipBits(stored.get(i), 3, random);
+            assertEquals(i, index.putIfAbsent(near, -1));
+            long far = flipBits(stored.get(i), 4 + random.nextInt(4), random);
+            Integer found = index.putIfAbsent(far, -1);
+            assertTrue(found == null || found == -1 || SimHash.distance(stored.get(found), far) <= 3);
+        }
+    }
+
+    private static long flipBits(long value, int count, Random random) {
+        long flipped = value;
+        while (SimHash.distance(value, flipped) < count) {
+            flipped ^= 1L << random.nextInt(64);
+        }
+        return flipped;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.example.model.ParsedPage;
+import com.example.store.StoreCodec;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PageContentCacheTest {
+
+    private final PageContentCache cache =
+            new PageContentCache(new SimpleMeterRegistry(), DataSize.ofMegabytes(1), Duration.ofHours(1));
+
+    private static ParsedPage page(String url) {
+        return new ParsedPage(url, 200, "text/html; charset=UTF-8", "Central Perk", "desc",
+                "Rachel and Ross at 中央咖啡館", List.of(url + "/a", url + "/b"));
+    }
+
+    @Test
+    void storedPageDecodesToTheSameContent() {
+        cache.put("https://example.com/friends", page("https://example.com/friends"));
+        ParsedPage cached = cache.get("https://example.com/friends");
+        assertNotNull(cached);
+        assertEquals("Central Perk", cached.getTitle());
+        assertEquals("Rachel and Ross at 中央咖啡館", cached.getText());
+        assertEquals(List.of("https://example.com/friends/a", "https://example.com/friends/b"), cached.getLinks());
+        assertEquals(200, cached.getStatusCode());
+    }
+
+    @Test
+    void encodedPagesAreSharedWithTheStoreFormat() {
+        byte[] encoded = StoreCodec.encodePage(page("https://example.com/p"));
+        cache.putEncoded("https://example.com/p", encoded);
+        assertEquals("Central Perk", cache.get("https://example.com/p").getTitle());
+        // 每次讀取各自解碼，互不影響
+        assertEquals(cache.get("https://example.com/p").getText(), cache.get("https://example.com/p").getText());
+    }
+
+    @Test
+    void fragmentsShareOneEntry() {
+        cache.put("https://example.com/page#top", page("https://example.com/page"));
+        assertNotNull(cache.get("https://example.com/page"));
+        assertNotNull(cache.get("https://example.com/page#other"));
+        assertNull(cache.get("https://example.com/other"));
+    }
+
+    private static ParsedPage large(String url, int seed, int length) {
+        // 亂數文字幾乎無法壓縮，一個網頁佔用數個區塊
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return new ParsedPage(url, 200, "text/html", "Episode " + seed, "", text.toString(), List.of());
+    }
+
+    @Test
+    void evictedPagesReturnTheirBlocksForNewPages() {
+        PageContentCache small = new PageContentCache(new SimpleMeterRegistry(),
+                DataSize.ofBytes(8 * PageContentCache.BLOCK_SIZE), Duration.ofHours(1));
+        for (int i = 0; i < 50; i++) {
+            String url = "https://example.com/" + i;
+            small.put(url, large(url, i, 3 * PageContentCache.BLOCK_SIZE));
+            // 容量只夠放兩個網頁，較早的網頁被淘汰後區塊才能重複使用
+            ParsedPage cached = small.get(url);
+            assertNotNull(cached);
+            assertEquals(large(url, i, 3 * PageContentCache.BLOCK_SIZE).getText(), cached.getText());
+        }
+        assertNull(small.get("https://example.com/0"));
+    }
+
+    @Test
+    void pagesLargerThanTheCacheAreNotStored() {
+        PageContentCache small = new PageContentCache(new SimpleMeterRegistry(),
+                DataSize.ofBytes(2 * PageContentCache.BLOCK_SIZE), Duration.ofHours(1));
+        small.put("https://example.com/huge", large("https://example.com/huge", 1, 4 * PageContentCache.BLOCK_SIZE));
+        assertNull(small.get("https://example.com/huge"));
+        small.put("https://example.com/p", page("https://example.com/p"));
+        assertNotNull(small.get("https://example.com/p"));
+    }
+}
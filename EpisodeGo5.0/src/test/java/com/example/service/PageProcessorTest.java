@@ -0,0 +1,166 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.example.fetch.FetchContext;
+import com.example.fetch.FetchProperties;
+import com.example.fetch.FetchScheduler;
+import com.example.fetch.HostCircuitBreakers;
+import com.example.fetch.HostLatencies;
+import com.example.fetch.PageFetcher;
+import com.example.model.PageHead;
+import com.example.model.ParsedPage;
+import com.example.store.PageStore;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PageProcessorTest {
+
+    private static final byte[] PAGE = ("<html><head><title>Central Perk</title></head>"
+            + "<body><p>Rachel and Ross</p></body></html>").getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private ExecutorService executor;
+    private FetchProperties properties;
+    private MeterRegistry registry;
+    private PageFetcher fetcher;
+    private PageProcessor processor;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, PAGE.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(PAGE);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        executor = Executors.newCachedThreadPool();
+        registry = new SimpleMeterRegistry();
+        properties = new FetchProperties();
+        properties.getHedge().setEnabled(false);
+        fetcher = new PageFetcher(properties, new HostLatencies(Duration.ofMinutes(1)),
+                new HostCircuitBreakers(registry, 5, Duration.ofSeconds(30)),
+                new FetchScheduler(registry, 16, 4, 100), registry, executor);
+        processor = newProcessor(10);
+    }
+
+    /**
+     * 各自有空的快取與儲存區
+     */
+    private PageProcessor newProcessor(int headLinks) {
+        PageStore store = new PageStore(false, "unused", DataSize.ofMegabytes(1), Duration.ofMinutes(5),
+                Duration.ofSeconds(10), 0.5, DataSize.ofMegabytes(1));
+        return new PageProcessor(fetcher, properties,
+                new PageContentCache(registry, DataSize.ofMegabytes(1), Duration.ofMinutes(1)),
+                new NegativeCache(registry, 100, Duration.ofMinutes(1)), store, Duration.ofDays(1),
+                new PageHeadCache(registry, 100, Duration.ofMinutes(1)), headLinks, 200);
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    void concurrentQueriesShareOneDownloadAndEachPaysForIt() throws Exception {
+        FetchContext first = new FetchContext();
+        FetchContext second = new FetchContext();
+        CompletableFuture<ParsedPage> a = processor.process(url("/friends"), first);
+        CompletableFuture<ParsedPage> b = processor.process(url("/friends"), second);
+        release.countDown();
+
+        assertEquals("Central Perk", a.get(5, TimeUnit.SECONDS).getTitle());
+        assertSame(a.get(), b.get());
+        assertEquals(1, requests.get());
+
+        long budget = properties.getMaxQuerySize().toBytes();
+        assertEquals(budget - PAGE.length, first.reserveBytes(budget, budget));
+        assertEquals(budget - PAGE.length, second.reserveBytes(budget, budget));
+    }
+
+    @Test
+    void aCancelledQueryDoesNotStopTheOthers() throws Exception {
+        FetchContext first = new FetchContext();
+        FetchContext second = new FetchContext();
+        CompletableFuture<ParsedPage> a = processor.process(url("/friends"), first);
+        CompletableFuture<ParsedPage> b = processor.process(url("/friends"), second);
+        first.cancelAll();
+        release.countDown();
+
+        assertEquals("Central Perk", b.get(5, TimeUnit.SECONDS).getTitle());
+        assertTrue(a.isCancelled());
+        assertEquals(1, requests.get());
+        // 取消的查詢不再分擔內容額度
+        long budget = properties.getMaxQuerySize().toBytes();
+        assertEquals(budget - PAGE.length, second.reserveBytes(budget, budget));
+    }
+
+    @Test
+    void headLinksAreTheSameWhetherThePageWasScannedOrCached() throws Exception {
+        byte[] html = ("<html><body><a href=\"#top\">T</a><a href=\"mailto:ross@example.com\">M</a>"
+                + "<a href=\"javascript:void(0)\">J</a><a href=\"\">E</a><a href=\"/wiki/Ross\">R</a>"
+                + "<a href=\"https://example.com/monica\">M</a><a href=\"/wiki/Joey\">J</a></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+        AtomicInteger downloads = new AtomicInteger();
+        server.createContext("/links", exchange -> {
+            downloads.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, html.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(html);
+            }
+        });
+
+        PageHead scanned = newProcessor(2).head(url("/links"), new FetchContext(), 0).get(5, TimeUnit.SECONDS);
+
+        PageProcessor cachedFirst = newProcessor(2);
+        cachedFirst.process(url("/links"), new FetchContext()).get(5, TimeUnit.SECONDS);
+        PageHead cached = cachedFirst.head(url("/links"), new FetchContext(), 0).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(url("/wiki/Ross"), "https://example.com/monica"), scanned.getLinks());
+        assertEquals(scanned.getLinks(), cached.getLinks());
+        // 第二個 head 取自完整解析後的快取，沒有再下載
+        assertEquals(2, downloads.get());
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.fetch.FetchContext;
+import com.example.model.PageHead;
+import com.example.model.ParsedPage;
+import com.example.model.SearchResult;
+import com.example.model.SelectionPolicy;
+import com.example.model.WebPage;
+
+class SearchEngineTest {
+
+    private final PageProcessor processor = mock(PageProcessor.class);
+    private final SearchEngine engine = new SearchEngine(processor, 5000, false, 16, false, 3);
+
+    private final List<WebPage> pages = List.of(
+            new WebPage("https://a.example/monica", "Monica"),
+            new WebPage("https://b.example/joey", "Joey"),
+            new WebPage("https://c.example/plain", "plain title"));
+
+    @BeforeEach
+    void stubFetches() {
+        when(processor.head(anyString(), any(), anyDouble()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("offline")));
+        when(processor.process(anyString(), any(), anyDouble()))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("offline")));
+    }
+
+    private static List<String> urls(List<SearchResult> results) {
+        List<String> urls = new ArrayList<>();
+        for (SearchResult r : results) {
+            urls.add(r.getWebPage().getUrl());
+        }
+        return urls;
+    }
+
+    private void subPage(String mainUrl, String text) {
+        String subUrl = mainUrl + "/sub";
+        when(processor.head(eq(mainUrl), any(), anyDouble()))
+                .thenReturn(CompletableFuture.completedFuture(new PageHead(mainUrl, List.of(subUrl), 0)));
+        when(processor.process(eq(subUrl), any(), anyDouble())).thenReturn(CompletableFuture.completedFuture(
+                new ParsedPage(subUrl, 200, "text/html", "", "", text, List.of())));
+    }
+
+    @Test
+    void progressStartsWithTitleScoresAndEndsWithTheFinalRanking() {
+        subPage("https://c.example/plain", "Friends: Rachel, Monica, Chandler, Joey, Phoebe and Ross");
+        List<List<String>> rankings = new ArrayList<>();
+
+        List<SearchResult> result = engine.searchAndSort(pages, "friends", SelectionPolicy.DEFAULT,
+                Duration.ofSeconds(5), ranking -> rankings.add(urls(ranking.get())));
+
+        assertEquals(1 + pages.size(), rankings.size());
+        assertEquals(List.of("https://a.example/monica", "https://b.example/joey", "https://c.example/plain"),
+                rankings.get(0));
+        assertEquals(List.of("https://c.example/plain", "https://a.example/monica", "https://b.example/joey"),
+                urls(result));
+        assertEquals(urls(result), rankings.get(rankings.size() - 1));
+    }
+
+    private void head(String url, CompletableFuture<PageHead> head) {
+        when(processor.head(eq(url), any(), anyDouble())).thenReturn(head);
+    }
+
+    private static CompletableFuture<PageHead> scanned(String url, long fingerprint) {
+        return CompletableFuture.completedFuture(new PageHead(url, List.of(), fingerprint));
+    }
+
+    @Test
+    void articlesFromTheSameSiteAreNeverMergedEvenWithEqualFingerprints() {
+        SearchEngine dedupe = new SearchEngine(processor, 5000, false, 16, true, 3);
+        List<WebPage> wiki = List.of(
+                new WebPage("https://friends.fandom.com/wiki/Ross_Geller", "Ross Geller"),
+                new WebPage("https://friends.fandom.com/wiki/Rachel_Green", "Rachel Green"));
+        for (WebPage page : wiki) {
+            head(page.getUrl(), scanned(page.getUrl(), 0x5DEECE66DL));
+        }
+        List<SearchResult> result = dedupe.searchAndSort(wiki, "friends", SelectionPolicy.DEFAULT,
+                Duration.ofSeconds(5), null);
+        assertEquals(List.of("https://friends.fandom.com/wiki/Rachel_Green",
+                "https://friends.fandom.com/wiki/Ross_Geller"), urls(result));
+    }
+
+    @Test
+    void mirrorsOnOtherHostsKeepTheEarliestResultWhicheverScansFirst() {
+        SearchEngine dedupe = new SearchEngine(processor, 5000, false, 16, true, 3);
+        List<WebPage> mirrored = List.of(
+                new WebPage("https://a.example/friends", "Joey"),
+                new WebPage("https://b.example/friends", "Monica and Rachel"),
+                new WebPage("https://c.example/other", "Chandler"));
+        long fingerprint = 0x5DEECE66DL;
+        // 原始順序在前的頁面較晚掃描完，較後面的頁面先成為代表頁，之後被取代
+        head("https://a.example/friends", CompletableFuture.supplyAsync(
+                () -> new PageHead("https://a.example/friends", List.of(), fingerprint),
+                CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)));
+        head("https://b.example/friends", scanned("https://b.example/friends", fingerprint ^ 0b101));
+        head("https://c.example/other", scanned("https://c.example/other", ~fingerprint));
+        List<List<String>> rankings = new ArrayList<>();
+
+        List<SearchResult> result = dedupe.searchAndSort(mirrored, "friends", SelectionPolicy.DEFAULT,
+                Duration.ofSeconds(5), ranking -> rankings.add(urls(ranking.get())));
+
+        assertEquals(List.of("https://a.example/friends", "https://c.example/other"), urls(result));
+        assertEquals(urls(result), rankings.get(rankings.size() - 1));
+    }
+
+    @Test
+    void mainPagesAreFetchedInParallel() {
+        List<WebPage> many = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String url = "https://site" + i + ".example/friends";
+            many.add(new WebPage(url, "Friends " + i));
+            head(url, CompletableFuture.supplyAsync(() -> new PageHead(url, List.of(), 0),
+                    CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)));
+        }
+        long start = System.nanoTime();
+        List<SearchResult> result = engine.searchAndSort(many, "friends", SelectionPolicy.DEFAULT,
+                Duration.ofSeconds(5), null);
+        // 依序抓取需要 4 秒
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(15, result.size());
+        assertTrue(result.stream().noneMatch(SearchResult::isPartial));
+    }
+
+    @Test
+    void budgetExpiryReturnsTitleScoresForUnfinishedPagesAndCancelsTheirFetches() {
+        subPage("https://a.example/monica", "Monica Geller and Chandler Bing");
+        List<CompletableFuture<PageHead>> hanging = new ArrayList<>();
+        when(processor.head(eq("https://c.example/plain"), any(), anyDouble())).thenAnswer(invocation -> {
+            FetchContext context = invocation.getArgument(1);
+            CompletableFuture<PageHead> never = context.track(new CompletableFuture<>());
+            hanging.add(never);
+            return never;
+        });
+
+        long start = System.nanoTime();
+        List<SearchResult> result = engine.searchAndSort(pages, "friends", SelectionPolicy.DEFAULT,
+                Duration.ofMillis(300), null);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(List.of("https://a.example/monica", "https://b.example/joey", "https://c.example/plain"),
+                urls(result));
+        assertEquals(List.of(false, false, true), result.stream().map(SearchResult::isPartial).toList());
+        assertEquals(0.0, result.get(2).getScore());
+        assertTrue(hanging.get(0).isCancelled());
+    }
+
+    @Test
+    void pruningSkipsPagesThatCannotReachTheList() {
+        String all = "Friends Rachel Monica Chandler Joey Phoebe Ross Central Perk Liu Renxing "
+                + "Eric Ascieline David Crane";
+        List<WebPage> candidates = List.of(
+                new WebPage("https://a.example/cast", all),
+                new WebPage("https://b.example/plain", "plain title"));
+        subPage("https://a.example/cast", all);
+        SelectionPolicy top1 = new SelectionPolicy(1, 3, 0, false);
+
+        SearchEngine pruning = new SearchEngine(processor, 5000, true, 1, false, 3);
+        List<SearchResult> result = pruning.searchAndSort(candidates, "friends", top1, Duration.ofSeconds(5), null);
+
+        assertEquals(List.of("https://a.example/cast"), urls(result));
+        // 標題 0 分、子網頁全拿滿分也追不上第一頁，不必抓取
+        verify(processor, never()).head(eq("https://b.example/plain"), any(), anyDouble());
+    }
+
+    private void subPages(String mainUrl, long fingerprint, String first, String second) {
+        List<String> subUrls = List.of(mainUrl + "/1", mainUrl + "/2");
+        head(mainUrl, CompletableFuture.completedFuture(new PageHead(mainUrl, subUrls, fingerprint)));
+        List<String> texts = List.of(first, second);
+        for (int i = 0; i < 2; i++) {
+            ParsedPage subPage = new ParsedPage(subUrls.get(i), 200, "text/html", "", "", texts.get(i), List.of());
+            when(processor.process(eq(subUrls.get(i)), any(), anyDouble()))
+                    .thenReturn(CompletableFuture.completedFuture(subPage));
+        }
+    }
+
+    @Test
+    void demotedDuplicatesDoNotPruneCandidatesThatBeatTheirReplacement() {
+        String all = "Friends Rachel Monica Chandler Joey Phoebe Ross Central Perk Liu Renxing "
+                + "Eric Ascieline David Crane";
+        List<WebPage> candidates = List.of(
+                new WebPage("https://a.example/friends", "Joey Chandler"),
+                new WebPage("https://b.example/friends", "Rachel Monica Phoebe"),
+                new WebPage("https://c.example/other", "Ross"));
+        long fingerprint = 0x5DEECE66DL;
+        // b 先算完成為代表頁 (門檻 = 標題 7 + 子網頁滿分 - 4)；較晚掃描完的鏡像 a 取代它，只有標題 4 + 同一份子網頁分數
+        subPages("https://b.example/friends", fingerprint, all,
+                "Friends Rachel Monica Central Perk Liu Renxing Eric Ascieline David Crane");
+        head("https://a.example/friends", CompletableFuture.supplyAsync(
+                () -> new PageHead("https://a.example/friends", List.of(), fingerprint),
+                CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)));
+        // c 的上限 (標題 2 + 子網頁滿分) 低於 b 的分數，但高於取代 b 的 a
+        subPages("https://c.example/other", ~fingerprint, all, all);
+        SelectionPolicy top1 = new SelectionPolicy(1, 3, 0, false);
+
+        SearchEngine both = new SearchEngine(processor, 5000, true, 16, true, 3);
+        List<SearchResult> result = both.searchAndSort(candidates, "friends", top1, Duration.ofSeconds(5), null);
+
+        assertEquals(List.of("https://c.example/other"), urls(result));
+    }
+
+    @Test
+    void queriesWithTheSameCacheKeyAreScoredTheSame() {
+        List<WebPage> geller = List.of(new WebPage("https://a.example/ross", "Ross Geller"),
+                new WebPage("https://b.example/emily", "Emily Waltham"));
+        List<Double> expected = engine.searchAndSort(geller, "ross geller").stream()
+                .map(SearchResult::getScore).toList();
+        // 全形字母、全形空白與多餘的空白：與 "ross geller" 是同一個快取鍵
+        for (String query : List.of("ＲＯＳＳ　Ｇｅｌｌｅｒ", "  Ross   GELLER ")) {
+            assertEquals(QueryNormalizer.normalize("ross geller"), QueryNormalizer.normalize(query));
+            assertEquals(expected, engine.searchAndSort(geller, query).stream()
+                    .map(SearchResult::getScore).toList(), query);
+        }
+    }
+
+    @Test
+    void withoutPruningEveryPageIsFetched() {
+        engine.searchAndSort(pages, "friends", new SelectionPolicy(1, 3, 0, false), Duration.ofSeconds(5), null);
+        for (WebPage page : pages) {
+            verify(processor).head(eq(page.getUrl()), any(), anyDouble());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class SerpAccumulatorTest {
+
+    @Test
+    void pagesKeepGoogleOrderWhicheverFinishesFirst() {
+        SerpAccumulator accumulator = new SerpAccumulator(2);
+        // 第二頁先解析完，結果仍依頁序排列
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            accumulator.add(0, "Ross", "https://ross.example/");
+            accumulator.add(0, "Rachel", "https://rachel.example/");
+        }, CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS));
+        accumulator.add(1, "Monica", "https://monica.example/");
+        first.join();
+
+        Map<String, String> results = accumulator.toRankedMap();
+        assertEquals(List.of("Ross", "Rachel", "Monica"), List.copyOf(results.keySet()));
+        assertEquals("https://ross.example/", results.get("Ross"));
+    }
+
+    @Test
+    void repeatedTitleKeepsItsFirstRankWithTheLaterUrl() {
+        SerpAccumulator accumulator = new SerpAccumulator(2);
+        accumulator.add(1, "Ross", "https://second.example/");
+        accumulator.add(0, "Ross", "https://first.example/");
+        accumulator.add(0, "Joey", "https://joey.example/");
+
+        Map<String, String> results = accumulator.toRankedMap();
+        assertEquals(List.of("Ross", "Joey"), List.copyOf(results.keySet()));
+        assertEquals("https://second.example/", results.get("Ross"));
+    }
+}
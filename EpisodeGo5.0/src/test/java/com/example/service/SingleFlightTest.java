@@ -0,0 +1,96 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersShareOneRun() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger runs = new AtomicInteger();
+        CompletableFuture<String> source = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flight.share("ross", () -> {
+            runs.incrementAndGet();
+            return source;
+        });
+        CompletableFuture<String> second = flight.share("ross", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        assertNotSame(first, second);
+        assertEquals(1, flight.inFlightCount());
+
+        source.complete("result");
+        assertEquals("result", first.get());
+        assertEquals("result", second.get());
+        assertEquals(1, runs.get());
+        assertEquals(0, flight.inFlightCount());
+
+        // 結束後的呼叫重新執行
+        assertEquals("again", flight.share("ross", () -> CompletableFuture.completedFuture("again")).get());
+    }
+
+    @Test
+    void workIsCancelledOnlyWhenEveryCallerGivesUp() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.share("ross", () -> source);
+        CompletableFuture<String> second = flight.share("ross", () -> source);
+
+        first.cancel(true);
+        assertFalse(source.isCancelled());
+        assertFalse(second.isDone());
+
+        second.cancel(true);
+        assertTrue(source.isCancelled());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void failuresReachEveryCaller() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> first = flight.share("ross", () -> {
+            throw new IllegalStateException("boom");
+        });
+        ExecutionException error = assertThrows(ExecutionException.class, first::get);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    void callersShareOneStateAndLeaveWhenTheyStopWaiting() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> source = new CompletableFuture<>();
+        List<List<String>> states = new ArrayList<>();
+
+        CompletableFuture<String> first = flight.share("ross", () -> {
+            List<String> state = new ArrayList<>();
+            states.add(state);
+            return state;
+        }, state -> state.add("first"), state -> state.remove("first"), state -> source);
+        CompletableFuture<String> second = flight.share("ross", ArrayList::new,
+                state -> state.add("second"), state -> state.remove("second"), state -> source);
+
+        assertEquals(1, states.size());
+        assertEquals(List.of("first", "second"), states.get(0));
+
+        first.cancel(true);
+        assertEquals(List.of("second"), states.get(0));
+        source.complete("result");
+        assertEquals("result", second.get());
+        assertTrue(states.get(0).isEmpty());
+    }
+}
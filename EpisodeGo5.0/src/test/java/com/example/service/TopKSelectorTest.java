@@ -0,0 +1,165 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TopKSelector 分桶保留的結果必須與「全部排序後依序挑選」相同
+ */
+class TopKSelectorTest {
+
+    private static final int K = 5;
+    private static final int MAX_PER_DOMAIN = 2;
+    private static final int MAX_WIKI = 3;
+
+    private record Item(int id, String domain, boolean wiki, double score) {
+    }
+
+    @Test
+    void matchesFullSort() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            List<Item> items = randomItems(random, random.nextInt(40));
+            TopKSelector<Item> selector = newSelector();
+            for (Item item : items) {
+                selector.offer(item, item.score(), item.id());
+            }
+            assertEquals(reference(items), selector.select(), "round " + round);
+        }
+    }
+
+    @Test
+    void pinnedItemComesFirst() {
+        TopKSelector<Item> selector = newSelector();
+        selector.offer(new Item(0, "a.com", false, 9.0), 9.0, 0);
+        selector.offer(new Item(1, "wikipedia.org", true, 1.0), 1.0, 1);
+        selector.offer(new Item(2, "wikipedia.org", true, 2.0), 2.0, 2);
+        List<Item> selected = selector.select();
+        assertEquals(2, selected.get(0).id());
+        assertEquals(0, selected.get(1).id());
+    }
+
+    @Test
+    void rejectedCandidatesCannotChangeTheResult() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            TopKSelector<Item> selector = newSelector();
+            List<Item> items = randomItems(random, 30);
+            for (Item item : items) {
+                if (!selector.canBeSelected(item, item.score())) {
+                    List<Item> before = selector.select();
+                    selector.offer(item, item.score(), item.id());
+                    assertEquals(before, selector.select(), "round " + round);
+                } else {
+                    selector.offer(item, item.score(), item.id());
+                }
+            }
+        }
+    }
+
+    @Test
+    void thresholdRisesAsCandidatesArrive() {
+        TopKSelector<Item> selector = newSelector();
+        assertEquals(Double.NEGATIVE_INFINITY, selector.threshold());
+        double previous = Double.NEGATIVE_INFINITY;
+        Random random = new Random(3);
+        for (Item item : randomItems(random, 50)) {
+            selector.offer(item, item.score(), item.id());
+            assertTrue(selector.threshold() >= previous);
+            previous = selector.threshold();
+        }
+    }
+
+    @Test
+    void updatableSelectorMatchesFullSortOfTheCurrentCandidates() {
+        Random random = new Random(19);
+        for (int round = 0; round < 300; round++) {
+            TopKSelector<Item> selector = TopKSelector.<Item>builder(K)
+                    .pinFirst(Item::wiki)
+                    .maxMatching(Item::wiki, MAX_WIKI)
+                    .maxPerGroup(Item::domain, MAX_PER_DOMAIN)
+                    .updatable()
+                    .build();
+            Map<Integer, Item> current = new TreeMap<>();
+            for (Item item : randomItems(random, 20)) {
+                selector.offer(item, item.score(), item.id());
+                current.put(item.id(), item);
+            }
+            // 分數可能上升或下降，也可能整筆移除 (近似重複)
+            for (int step = 0; step < 30; step++) {
+                int id = random.nextInt(20);
+                if (random.nextInt(5) == 0) {
+                    selector.remove(id);
+                    current.remove(id);
+                } else {
+                    Item old = randomItems(random, 1).get(0);
+                    Item item = new Item(id, old.domain(), old.wiki(), old.score());
+                    selector.offer(item, item.score(), id);
+                    current.put(id, item);
+                }
+                assertEquals(reference(new ArrayList<>(current.values())), selector.select(),
+                        "round " + round + " step " + step);
+            }
+        }
+    }
+
+    private static TopKSelector<Item> newSelector() {
+        return TopKSelector.<Item>builder(K)
+                .pinFirst(Item::wiki)
+                .maxMatching(Item::wiki, MAX_WIKI)
+                .maxPerGroup(Item::domain, MAX_PER_DOMAIN)
+                .build();
+    }
+
+    private static List<Item> randomItems(Random random, int count) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean wiki = random.nextInt(4) == 0;
+            String domain = wiki ? "wikipedia.org" : "site" + random.nextInt(6) + ".com";
+            // 分數只有少數幾種，確保常有同分
+            items.add(new Item(i, domain, wiki, random.nextInt(8) / 2.0));
+        }
+        return items;
+    }
+
+    /**
+     * 全部排序 (分數高者優先，同分依原始順序) 後先放固定項目，再依序挑選並遵守各組上限
+     */
+    private static List<Item> reference(List<Item> items) {
+        List<Item> sorted = new ArrayList<>(items);
+        sorted.sort(Comparator.comparingDouble(Item::score).reversed());
+        List<Item> selected = new ArrayList<>();
+        Map<String, Integer> perDomain = new HashMap<>();
+        int[] wiki = new int[1];
+        sorted.stream().filter(Item::wiki).findFirst()
+                .ifPresent(pin -> take(pin, selected, perDomain, wiki));
+        for (Item item : sorted) {
+            if (!selected.contains(item)) {
+                take(item, selected, perDomain, wiki);
+            }
+        }
+        return selected;
+    }
+
+    private static void take(Item item, List<Item> selected, Map<String, Integer> perDomain, int[] wiki) {
+        if (selected.size() >= K || perDomain.getOrDefault(item.domain(), 0) >= MAX_PER_DOMAIN
+                || (item.wiki() && wiki[0] >= MAX_WIKI)) {
+            return;
+        }
+        perDomain.merge(item.domain(), 1, Integer::sum);
+        if (item.wiki()) {
+            wiki[0]++;
+        }
+        selected.add(item);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class UrlCanonicalizerTest {
+
+    @Test
+    void sameContentGetsSameKey() {
+        String key = UrlCanonicalizer.canonicalize("https://en.wikipedia.org/wiki/Friends");
+        assertEquals(key, UrlCanonicalizer.canonicalize("http://EN.Wikipedia.org:80/wiki/Friends/"));
+        assertEquals(key, UrlCanonicalizer.canonicalize("https://en.m.wikipedia.org/wiki/Friends#Cast"));
+        assertEquals(key, UrlCanonicalizer.canonicalize("https://en.wikipedia.org/wiki/%46riends?utm_source=x"));
+        assertEquals("imdb.com/title/tt0108778", UrlCanonicalizer.canonicalize("https://m.imdb.com/title/tt0108778/"));
+    }
+
+    @Test
+    void escapesAreNormalized() {
+        assertEquals("example.com/%E5%85%AD%E4%BA%BA%E8%A1%8C",
+                UrlCanonicalizer.canonicalize("https://example.com/%e5%85%ad%e4%ba%ba%e8%a1%8c"));
+        assertEquals(UrlCanonicalizer.canonicalize("https://example.com/a%2Fb"),
+                UrlCanonicalizer.canonicalize("https://example.com/a%2fb"));
+        assertEquals("https://example.com/a%E7b", UrlCanonicalizer.fixDoubleEncoding("https://example.com/a%25E7b"));
+    }
+
+    @Test
+    void queryParametersAreSortedAndTrackersDropped() {
+        assertEquals("example.com/p?a=1&b=2&b=1",
+                UrlCanonicalizer.canonicalize("https://example.com/p?b=2&gclid=x&a=1&b=1&fbclid=y"));
+    }
+
+    @Test
+    void googleParametersAreOnlyDroppedOnGoogle() {
+        assertEquals("google.com/url?q=https://example.com",
+                UrlCanonicalizer.canonicalize("https://www.google.com/url?q=https://example.com&sa=U&ved=abc&usg=def"));
+        assertEquals("example.com/search?ei=1&sa=2",
+                UrlCanonicalizer.canonicalize("https://example.com/search?sa=2&ei=1"));
+    }
+
+    @Test
+    void mobileHostIsOnlyStrippedForKnownMirrors() {
+        assertNotEquals(UrlCanonicalizer.canonicalize("https://m.example.com/"),
+                UrlCanonicalizer.canonicalize("https://example.com/"));
+        assertEquals("mobile.example.com/", UrlCanonicalizer.canonicalize("https://mobile.example.com/"));
+    }
+
+    @Test
+    void nonHttpUrlsHaveNoKey() {
+        assertNull(UrlCanonicalizer.canonicalize("mailto:ross@example.com"));
+        assertNull(UrlCanonicalizer.canonicalize("ftp://example.com/file"));
+        assertNull(UrlCanonicalizer.canonicalize("not a url"));
+        assertEquals("example.com:8080/", UrlCanonicalizer.canonicalize("http://example.com:8080"));
+    }
+}
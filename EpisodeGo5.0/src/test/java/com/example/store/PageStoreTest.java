@@ -0,0 +1,204 @@
+package com.example.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * PageStore 的當機復原、壓縮、保存期限與容量上限
+ *
+ * 每筆記錄 = 24 bytes 標頭 + key + value；測試用 1 byte 的 key 與 100 bytes 的 value，
+ * 因此第 n 筆記錄從 125 * n 開始。
+ */
+class PageStoreTest {
+
+    private static final Duration FOREVER = Duration.ofDays(1);
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = HEADER_SIZE + 1 + 100;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void truncatedTailIsDroppedAndOverwritten() throws IOException {
+        PageStore store = open(DataSize.ofKilobytes(64));
+        store.put("a", value('a', 100));
+        store.put("b", value('b', 100));
+        store.put("c", value('c', 100));
+        store.close();
+
+        // 模擬寫入 c 的途中當機：還沒有索引快照，c 的後半段沒寫到磁碟
+        Files.delete(dir.resolve("index.dat"));
+        zero(segment(1), 2 * RECORD_SIZE + HEADER_SIZE + 1 + 50, 50);
+
+        store = open(DataSize.ofKilobytes(64));
+        assertArrayEquals(value('a', 100), get(store, "a"));
+        assertArrayEquals(value('b', 100), get(store, "b"));
+        assertNull(store.get("c", FOREVER));
+
+        // 新記錄寫在被截掉的位置，重新開啟後仍讀得到
+        store.put("d", value('d', 100));
+        store.close();
+        store = open(DataSize.ofKilobytes(64));
+        assertArrayEquals(value('b', 100), get(store, "b"));
+        assertArrayEquals(value('d', 100), get(store, "d"));
+        assertNull(store.get("c", FOREVER));
+        store.close();
+    }
+
+    @Test
+    void badChecksumStopsRecovery() throws IOException {
+        PageStore store = open(DataSize.ofKilobytes(64));
+        store.put("a", value('a', 100));
+        store.put("b", value('b', 100));
+        store.put("c", value('c', 100));
+        store.close();
+
+        Files.delete(dir.resolve("index.dat"));
+        try (FileChannel channel = FileChannel.open(segment(1), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'x'}), RECORD_SIZE + HEADER_SIZE + 1 + 10);
+        }
+
+        store = open(DataSize.ofKilobytes(64));
+        assertArrayEquals(value('a', 100), get(store, "a"));
+        assertNull(store.get("b", FOREVER));
+        assertNull(store.get("c", FOREVER));
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    void compactionSurvivesReopen() throws IOException {
+        // 每個分段放得下 4 筆 (4 * 226 bytes)
+        DataSize segmentSize = DataSize.ofBytes(1024);
+        PageStore store = open(segmentSize);
+        for (int i = 0; i < 4; i++) {
+            store.put("k" + i, value((char) ('0' + i), 200));
+        }
+        // 第 1 個分段只剩 k0 有效
+        for (int i = 1; i < 5; i++) {
+            store.put("k" + i, value((char) ('a' + i), 200));
+        }
+        store.compact();
+        store.close();
+        assertFalse(Files.exists(segment(1)));
+
+        store = open(segmentSize);
+        assertArrayEquals(value('0', 200), get(store, "k0"));
+        for (int i = 1; i < 5; i++) {
+            assertArrayEquals(value((char) ('a' + i), 200), get(store, "k" + i));
+        }
+        store.close();
+
+        // 沒有索引時從分段重建，結果相同
+        Files.delete(dir.resolve("index.dat"));
+        store = open(segmentSize);
+        assertEquals(5, store.size());
+        assertArrayEquals(value('0', 200), get(store, "k0"));
+        assertArrayEquals(value('d', 200), get(store, "k3"));
+        store.close();
+    }
+
+    @Test
+    void compactionDropsExpiredEntries() throws IOException, InterruptedException {
+        DataSize segmentSize = DataSize.ofBytes(1024);
+        PageStore store = open(segmentSize);
+        // 第 1 個分段全是很快過期的 serp:，第 2 個分段是不會過期的 page:
+        for (int i = 0; i < 4; i++) {
+            store.put("serp:" + i, value('s', 200));
+        }
+        store.put("page:0", value('p', 200));
+        store.retain("serp:", Duration.ofMillis(1));
+        Thread.sleep(20);
+
+        store.compact();
+        assertEquals(1, store.size());
+        assertNull(store.get("serp:0", FOREVER));
+        assertArrayEquals(value('p', 200), get(store, "page:0"));
+        store.close();
+        // 只剩過期記錄的分段不必搬移，直接刪除
+        assertFalse(Files.exists(segment(1)));
+
+        store = open(segmentSize);
+        assertEquals(1, store.size());
+        assertArrayEquals(value('p', 200), get(store, "page:0"));
+        store.close();
+    }
+
+    @Test
+    void sizeLimitDropsOldestSegments() throws IOException {
+        DataSize segmentSize = DataSize.ofBytes(1024);
+        PageStore store = open(segmentSize, DataSize.ofBytes(2048));
+        // 10 筆分佈在 3 個分段 (4 + 4 + 2)
+        for (int i = 0; i < 10; i++) {
+            store.put("k" + i, value((char) ('0' + i), 200));
+        }
+        store.compact();
+        assertFalse(Files.exists(segment(1)));
+        assertEquals(6, store.size());
+        for (int i = 0; i < 4; i++) {
+            assertNull(store.get("k" + i, FOREVER));
+        }
+        for (int i = 4; i < 10; i++) {
+            assertArrayEquals(value((char) ('0' + i), 200), get(store, "k" + i));
+        }
+        store.close();
+
+        store = open(segmentSize, DataSize.ofBytes(2048));
+        assertEquals(6, store.size());
+        assertNull(store.get("k0", FOREVER));
+        assertArrayEquals(value('9', 200), get(store, "k9"));
+        store.close();
+    }
+
+    private PageStore open(DataSize segmentSize) throws IOException {
+        return open(segmentSize, DataSize.ofGigabytes(1));
+    }
+
+    private PageStore open(DataSize segmentSize, DataSize maxSize) throws IOException {
+        PageStore store = new PageStore(true, dir.toString(), segmentSize,
+                Duration.ofHours(1), Duration.ofHours(1), 0.5, maxSize);
+        store.open();
+        return store;
+    }
+
+    private Path segment(int id) {
+        return dir.resolve(String.format("segment-%08d.log", id));
+    }
+
+    private static byte[] get(PageStore store, String key) {
+        ByteBuffer buffer = store.get(key, FOREVER);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] value(char fill, int length) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) fill);
+        return bytes;
+    }
+
+    private static void zero(Path file, long position, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[length]), position);
+        }
+    }
+}